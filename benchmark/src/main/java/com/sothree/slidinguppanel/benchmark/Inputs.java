@@ -0,0 +1,37 @@
+package com.sothree.slidinguppanel.benchmark;
+
+import java.util.Random;
+
+/**
+ * Inputs shared by the benchmarks, generated from a fixed seed so that runs are comparable.
+ */
+final class Inputs {
+    // Power of two, so that the benchmarks can cycle through the inputs with a mask
+    static final int SIZE = 1024;
+
+    static final int LAYOUT_HEIGHT = 1920;
+    static final int PANEL_HEIGHT = 160;
+
+    private static final int MAX_VELOCITY = 10000;
+
+    private Inputs() {
+    }
+
+    static void fillOffsets(float[] offsets, float min, float max) {
+        final Random random = new Random(42);
+        for (int i = 0; i < offsets.length; i++) {
+            offsets[i] = min + random.nextFloat() * (max - min);
+        }
+    }
+
+    /**
+     * Fill with velocities in pixels per second, a quarter of them zero.
+     */
+    static void fillVelocities(float[] velocities) {
+        final Random random = new Random(43);
+        for (int i = 0; i < velocities.length; i++) {
+            velocities[i] = random.nextInt(4) == 0 ? 0
+                    : (random.nextFloat() * 2 - 1) * MAX_VELOCITY;
+        }
+    }
+}
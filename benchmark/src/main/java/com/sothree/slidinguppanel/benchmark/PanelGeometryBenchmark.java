@@ -0,0 +1,75 @@
+package com.sothree.slidinguppanel.benchmark;
+
+import com.sothree.slidinguppanel.core.PanelGeometry;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the panel geometry: recomputing the table on a layout pass, and the conversions
+ * between slide offsets and panel tops done on every drag frame.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PanelGeometryBenchmark {
+    private final PanelGeometry mGeometry = new PanelGeometry();
+    private final float[] mOffsets = new float[Inputs.SIZE];
+    private final int[] mTops = new int[Inputs.SIZE];
+    private int mIndex;
+
+    @Setup
+    public void setUp() {
+        mGeometry.update(true, Inputs.LAYOUT_HEIGHT, 0, 0, Inputs.PANEL_HEIGHT,
+                Inputs.LAYOUT_HEIGHT, 0.5f);
+        Inputs.fillOffsets(mOffsets, -0.1f, 1.1f);
+        for (int i = 0; i < mTops.length; i++) {
+            mTops[i] = mGeometry.computeTop(mOffsets[i]);
+        }
+    }
+
+    private int next() {
+        return mIndex = (mIndex + 1) & (Inputs.SIZE - 1);
+    }
+
+    @Benchmark
+    public int update() {
+        mGeometry.update(true, Inputs.LAYOUT_HEIGHT, 0, 0, Inputs.PANEL_HEIGHT,
+                Inputs.LAYOUT_HEIGHT - next(), 0.5f);
+        return mGeometry.getAnchoredTop();
+    }
+
+    @Benchmark
+    public int setInset() {
+        mGeometry.setInset(next());
+        return mGeometry.getCollapsedTop();
+    }
+
+    @Benchmark
+    public int computeTop() {
+        return mGeometry.computeTop(mOffsets[next()]);
+    }
+
+    @Benchmark
+    public float computeSlideOffset() {
+        return mGeometry.computeSlideOffset(mTops[next()]);
+    }
+
+    @Benchmark
+    public int clampTop() {
+        return mGeometry.clampTop(mTops[next()]);
+    }
+}
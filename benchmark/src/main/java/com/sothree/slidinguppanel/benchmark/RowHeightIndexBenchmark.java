@@ -0,0 +1,89 @@
+package com.sothree.slidinguppanel.benchmark;
+
+import com.sothree.slidinguppanel.core.RowHeightIndex;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the row height index of a variable height adapter with about a million items,
+ * as used by the list strategies: report the heights of the visible rows after a layout, then
+ * query the offset of the first one. Also measures appending a page of rows after a data set
+ * change, and a full rebuild.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RowHeightIndexBenchmark {
+    private static final int VISIBLE_ROWS = 12;
+    private static final int PAGE_ROWS = 20;
+
+    @Param({"1000000"})
+    public int count;
+
+    private RowHeightIndex mIndex;
+    private final int[] mFirstPositions = new int[Inputs.SIZE];
+    private final int[] mHeights = new int[Inputs.SIZE];
+    private int mIndexInInputs;
+    private boolean mGrown;
+
+    @Setup
+    public void setUp() {
+        mIndex = new RowHeightIndex(count, 48);
+        final Random random = new Random(44);
+        for (int i = 0; i < Inputs.SIZE; i++) {
+            mFirstPositions[i] = random.nextInt(count - VISIBLE_ROWS);
+            mHeights[i] = 24 + random.nextInt(200);
+        }
+        for (int i = 0; i < count; i++) {
+            mIndex.setHeight(i, 24 + random.nextInt(200));
+        }
+    }
+
+    @Benchmark
+    public long visibleRowsUpdateAndQuery() {
+        final int i = mIndexInInputs = (mIndexInInputs + 1) & (Inputs.SIZE - 1);
+        final int first = mFirstPositions[i];
+        for (int row = 0; row < VISIBLE_ROWS; row++) {
+            mIndex.setHeight(first + row, mHeights[(i + row) & (Inputs.SIZE - 1)]);
+        }
+        return mIndex.getOffsetOf(first);
+    }
+
+    @Benchmark
+    public int findPosition() {
+        final int i = mIndexInInputs = (mIndexInInputs + 1) & (Inputs.SIZE - 1);
+        return mIndex.findPosition(mIndex.getOffsetOf(mFirstPositions[i]) + mHeights[i]);
+    }
+
+    @Benchmark
+    public long appendPage() {
+        // Alternate between two sizes, appending then dropping a page at the end
+        mGrown = !mGrown;
+        mIndex.setCount(mGrown ? count + PAGE_ROWS : count);
+        return mIndex.getTotalHeight();
+    }
+
+    @Benchmark
+    public long rebuild() {
+        // Growing past twice the current count rebuilds the whole tree
+        mIndex.setCount(0);
+        mIndex.setCount(count);
+        return mIndex.getTotalHeight();
+    }
+}
@@ -0,0 +1,55 @@
+package com.sothree.slidinguppanel.benchmark;
+
+import com.sothree.slidinguppanel.core.DragPhysics;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the settle duration computed when a panel is released or slid programmatically.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SettleDurationBenchmark {
+    private static final int MIN_VELOCITY = 400;
+    private static final int MAX_VELOCITY = 8000;
+    private static final int LAYOUT_WIDTH = 1080;
+
+    private final int[] mDistances = new int[Inputs.SIZE];
+    private final int[] mVelocities = new int[Inputs.SIZE];
+    private int mIndex;
+
+    @Setup
+    public void setUp() {
+        final float[] velocities = new float[Inputs.SIZE];
+        Inputs.fillVelocities(velocities);
+        final float[] offsets = new float[Inputs.SIZE];
+        Inputs.fillOffsets(offsets, -1.f, 1.f);
+        for (int i = 0; i < Inputs.SIZE; i++) {
+            mDistances[i] = (int) (offsets[i] * Inputs.LAYOUT_HEIGHT);
+            mVelocities[i] = (int) velocities[i];
+        }
+    }
+
+    @Benchmark
+    public int computeSettleDuration() {
+        final int i = mIndex = (mIndex + 1) & (Inputs.SIZE - 1);
+        return DragPhysics.computeSettleDuration(0, mDistances[i], 0, mVelocities[i],
+                MIN_VELOCITY, MAX_VELOCITY, 0, Inputs.LAYOUT_HEIGHT - Inputs.PANEL_HEIGHT,
+                LAYOUT_WIDTH);
+    }
+}
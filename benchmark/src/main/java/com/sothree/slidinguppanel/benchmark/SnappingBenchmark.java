@@ -0,0 +1,51 @@
+package com.sothree.slidinguppanel.benchmark;
+
+import com.sothree.slidinguppanel.core.PanelGeometry;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the choice of the resting position of a released panel, with and without an
+ * anchor point.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SnappingBenchmark {
+    @Param({"0.5", "1.0"})
+    public float anchorPoint;
+
+    private final PanelGeometry mGeometry = new PanelGeometry();
+    private final float[] mOffsets = new float[Inputs.SIZE];
+    private final float[] mVelocities = new float[Inputs.SIZE];
+    private int mIndex;
+
+    @Setup
+    public void setUp() {
+        mGeometry.update(true, Inputs.LAYOUT_HEIGHT, 0, 0, Inputs.PANEL_HEIGHT,
+                Inputs.LAYOUT_HEIGHT, anchorPoint);
+        Inputs.fillOffsets(mOffsets, 0.f, 1.f);
+        Inputs.fillVelocities(mVelocities);
+    }
+
+    @Benchmark
+    public int computeReleaseTop() {
+        final int i = mIndex = (mIndex + 1) & (Inputs.SIZE - 1);
+        return mGeometry.computeReleaseTop(mOffsets[i], mVelocities[i]);
+    }
+}
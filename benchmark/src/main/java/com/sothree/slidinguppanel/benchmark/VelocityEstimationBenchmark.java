@@ -0,0 +1,63 @@
+package com.sothree.slidinguppanel.benchmark;
+
+import com.sothree.slidinguppanel.core.TouchPredictor;
+import com.sothree.slidinguppanel.core.TouchSampleBuffer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the touch sample buffering and of the least squares fit of the pointer velocity
+ * and acceleration done on every move event when touch prediction is enabled.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VelocityEstimationBenchmark {
+    // One sample every 8ms, like a 120Hz touch screen
+    private static final int SAMPLE_INTERVAL = 8; // ms
+    private static final long PREDICTION_HORIZON = 16; // ms
+
+    private final TouchSampleBuffer mSamples = new TouchSampleBuffer();
+    private final TouchPredictor mPredictor = new TouchPredictor();
+    private long mTime;
+
+    @Setup
+    public void setUp() {
+        for (int i = 0; i < TouchSampleBuffer.CAPACITY; i++) {
+            addSample();
+        }
+    }
+
+    private void addSample() {
+        mTime += SAMPLE_INTERVAL;
+        // Decelerating drag, with some jitter
+        final float t = (mTime % 1000) / 1000f;
+        mSamples.add(mTime, 0, 1500 * t - 600 * t * t + (mTime % 3));
+    }
+
+    @Benchmark
+    public float addSampleAndInterpolate() {
+        addSample();
+        return mSamples.getYAt(mTime - SAMPLE_INTERVAL / 2);
+    }
+
+    @Benchmark
+    public float addSampleAndPredict() {
+        addSample();
+        return mPredictor.predictDeltaY(mSamples, mTime, PREDICTION_HORIZON);
+    }
+}
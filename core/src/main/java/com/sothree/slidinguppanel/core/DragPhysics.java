@@ -0,0 +1,113 @@
+package com.sothree.slidinguppanel.core;
+
+/**
+ * Settle duration and velocity clamping of a dragged view, as computed by the ViewDragHelper.
+ *
+ * Plain Java, so that it can be benchmarked and tested off device.
+ */
+public final class DragPhysics {
+    public static final int BASE_SETTLE_DURATION = 256; // ms
+    public static final int MAX_SETTLE_DURATION = 600; // ms
+
+    private DragPhysics() {
+    }
+
+    /**
+     * Compute the duration of the animation settling a view at its final position.
+     *
+     * @param dx              Horizontal distance to travel in pixels
+     * @param dy              Vertical distance to travel in pixels
+     * @param xvel            Horizontal release velocity in pixels per second
+     * @param yvel            Vertical release velocity in pixels per second
+     * @param minVelocity     Velocities below this are ignored
+     * @param maxVelocity     Velocities above this are clamped
+     * @param horizontalRange Horizontal drag range of the view in pixels
+     * @param verticalRange   Vertical drag range of the view in pixels
+     * @param parentWidth     Width of the parent of the view in pixels
+     * @return The duration in milliseconds
+     */
+    public static int computeSettleDuration(int dx, int dy, int xvel, int yvel,
+                                            int minVelocity, int maxVelocity,
+                                            int horizontalRange, int verticalRange,
+                                            int parentWidth) {
+        xvel = clampMag(xvel, minVelocity, maxVelocity);
+        yvel = clampMag(yvel, minVelocity, maxVelocity);
+        final int absDx = Math.abs(dx);
+        final int absDy = Math.abs(dy);
+        final int absXVel = Math.abs(xvel);
+        final int absYVel = Math.abs(yvel);
+        final int addedVel = absXVel + absYVel;
+        final int addedDistance = absDx + absDy;
+
+        final float xweight = xvel != 0 ? (float) absXVel / addedVel :
+                (float) absDx / addedDistance;
+        final float yweight = yvel != 0 ? (float) absYVel / addedVel :
+                (float) absDy / addedDistance;
+
+        int xduration = computeAxisDuration(dx, xvel, horizontalRange, parentWidth);
+        int yduration = computeAxisDuration(dy, yvel, verticalRange, parentWidth);
+
+        return (int) (xduration * xweight + yduration * yweight);
+    }
+
+    private static int computeAxisDuration(int delta, int velocity, int motionRange, int width) {
+        if (delta == 0) {
+            return 0;
+        }
+
+        final int halfWidth = width / 2;
+        final float distanceRatio = Math.min(1f, (float) Math.abs(delta) / width);
+        final float distance = halfWidth + halfWidth *
+                distanceInfluenceForSnapDuration(distanceRatio);
+
+        int duration;
+        velocity = Math.abs(velocity);
+        if (velocity > 0) {
+            duration = 4 * Math.round(1000 * Math.abs(distance / velocity));
+        } else {
+            final float range = (float) Math.abs(delta) / motionRange;
+            duration = (int) ((range + 1) * BASE_SETTLE_DURATION);
+        }
+        return Math.min(duration, MAX_SETTLE_DURATION);
+    }
+
+    /**
+     * Clamp the magnitude of value for absMin and absMax.
+     * If the value is below the minimum, it will be clamped to zero.
+     * If the value is above the maximum, it will be clamped to the maximum.
+     *
+     * @param value Value to clamp
+     * @param absMin Absolute value of the minimum significant value to return
+     * @param absMax Absolute value of the maximum value to return
+     * @return The clamped value with the same sign as <code>value</code>
+     */
+    public static int clampMag(int value, int absMin, int absMax) {
+        final int absValue = Math.abs(value);
+        if (absValue < absMin) return 0;
+        if (absValue > absMax) return value > 0 ? absMax : -absMax;
+        return value;
+    }
+
+    /**
+     * Clamp the magnitude of value for absMin and absMax.
+     * If the value is below the minimum, it will be clamped to zero.
+     * If the value is above the maximum, it will be clamped to the maximum.
+     *
+     * @param value Value to clamp
+     * @param absMin Absolute value of the minimum significant value to return
+     * @param absMax Absolute value of the maximum value to return
+     * @return The clamped value with the same sign as <code>value</code>
+     */
+    public static float clampMag(float value, float absMin, float absMax) {
+        final float absValue = Math.abs(value);
+        if (absValue < absMin) return 0;
+        if (absValue > absMax) return value > 0 ? absMax : -absMax;
+        return value;
+    }
+
+    private static float distanceInfluenceForSnapDuration(float f) {
+        f -= 0.5f; // center the values about 0.
+        f *= 0.3f * Math.PI / 2.0f;
+        return (float) Math.sin(f);
+    }
+}
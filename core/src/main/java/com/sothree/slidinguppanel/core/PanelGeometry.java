@@ -0,0 +1,173 @@
+package com.sothree.slidinguppanel.core;
+
+/**
+ * Integer pixel positions of the sliding panel in each of its resting states, along with the
+ * conversions between slide offsets and panel tops.
+ *
+ * The table is only recomputed when the layout is measured or one of its inputs changes, so that
+ * per frame code can look up the collapsed, anchored, expanded and hidden tops instead of
+ * recomputing them from floating point slide offsets.
+ *
+ * Plain Java, so that it can be benchmarked and tested off device.
+ */
+public class PanelGeometry {
+    private boolean mSlidingUp;
+    private int mPanelHeight;
+    private float mAnchorPoint;
+
+    // Collapsed top and slide range without the inset
+    private int mBaseCollapsedTop;
+    private int mBaseSlideRange;
+    private int mInset;
+
+    private int mCollapsedTop;
+    private int mAnchoredTop;
+    private int mExpandedTop;
+    private int mHiddenTop;
+    private int mSlideRange;
+
+    /**
+     * Recompute the table.
+     *
+     * @param slidingUp           true if the collapsed panel is dragged up
+     * @param layoutHeight        measured height of the layout
+     * @param paddingTop          top padding of the layout
+     * @param paddingBottom       bottom padding of the layout
+     * @param panelHeight         height of the collapsed panel
+     * @param panelMeasuredHeight measured height of the sliding panel
+     * @param anchorPoint         anchor point, from 0 (collapsed) to 1 (expanded)
+     */
+    public void update(boolean slidingUp, int layoutHeight, int paddingTop, int paddingBottom,
+                       int panelHeight, int panelMeasuredHeight, float anchorPoint) {
+        mSlidingUp = slidingUp;
+        mPanelHeight = panelHeight;
+        mAnchorPoint = anchorPoint;
+        mBaseSlideRange = panelMeasuredHeight - panelHeight;
+        mBaseCollapsedTop = slidingUp
+                ? layoutHeight - paddingBottom - panelHeight
+                : paddingTop - panelMeasuredHeight + panelHeight;
+        applyInset();
+    }
+
+    /**
+     * Recompute the anchored top only.
+     */
+    public void setAnchorPoint(float anchorPoint) {
+        mAnchorPoint = anchorPoint;
+        mAnchoredTop = computeTop(anchorPoint);
+    }
+
+    /**
+     * Set the inset of the edge the panel collapses to, e.g. the part of the screen covered by
+     * the soft keyboard. The collapsed and hidden positions move away from that edge by the inset
+     * while the expanded position stays, so the slide range shrinks. Only the affected positions
+     * are recomputed.
+     */
+    public void setInset(int inset) {
+        if (mInset != inset) {
+            mInset = inset;
+            applyInset();
+        }
+    }
+
+    public int getInset() {
+        return mInset;
+    }
+
+    private void applyInset() {
+        final int inset = Math.min(mInset, Math.max(mBaseSlideRange, 0));
+        mSlideRange = mBaseSlideRange - inset;
+        mCollapsedTop = mSlidingUp ? mBaseCollapsedTop - inset : mBaseCollapsedTop + inset;
+        mExpandedTop = computeTop(1.0f);
+        mHiddenTop = mSlidingUp ? mCollapsedTop + mPanelHeight : mCollapsedTop - mPanelHeight;
+        mAnchoredTop = computeTop(mAnchorPoint);
+    }
+
+    public boolean isSlidingUp() {
+        return mSlidingUp;
+    }
+
+    public int getPanelHeight() {
+        return mPanelHeight;
+    }
+
+    public int getSlideRange() {
+        return mSlideRange;
+    }
+
+    public int getCollapsedTop() {
+        return mCollapsedTop;
+    }
+
+    public int getAnchoredTop() {
+        return mAnchoredTop;
+    }
+
+    public int getExpandedTop() {
+        return mExpandedTop;
+    }
+
+    public int getHiddenTop() {
+        return mHiddenTop;
+    }
+
+    /**
+     * Computes the top position of the panel based on the slide offset.
+     */
+    public int computeTop(float slideOffset) {
+        int slidePixelOffset = (int) (slideOffset * mSlideRange);
+        return mSlidingUp ? mCollapsedTop - slidePixelOffset : mCollapsedTop + slidePixelOffset;
+    }
+
+    /**
+     * Computes the slide offset based on the top position of the panel.
+     */
+    public float computeSlideOffset(int top) {
+        return (mSlidingUp
+                ? (float) (mCollapsedTop - top) / mSlideRange
+                : (float) (top - mCollapsedTop) / mSlideRange);
+    }
+
+    /**
+     * Choose the resting top the panel settles to when it is released.
+     *
+     * @param slideOffset The slide offset of the panel when released
+     * @param direction   The release velocity, positive towards the expanded position
+     * @return The collapsed, anchored or expanded top
+     */
+    public int computeReleaseTop(float slideOffset, float direction) {
+        if (direction > 0 && slideOffset <= mAnchorPoint) {
+            // swipe up -> expand and stop at anchor point
+            return mAnchoredTop;
+        } else if (direction > 0 && slideOffset > mAnchorPoint) {
+            // swipe up past anchor -> expand
+            return mExpandedTop;
+        } else if (direction < 0 && slideOffset >= mAnchorPoint) {
+            // swipe down -> collapse and stop at anchor point
+            return mAnchoredTop;
+        } else if (direction < 0 && slideOffset < mAnchorPoint) {
+            // swipe down past anchor -> collapse
+            return mCollapsedTop;
+        } else if (slideOffset >= (1.f + mAnchorPoint) / 2) {
+            // zero velocity, and far enough from anchor point => expand to the top
+            return mExpandedTop;
+        } else if (slideOffset >= mAnchorPoint / 2) {
+            // zero velocity, and close enough to anchor point => go to anchor
+            return mAnchoredTop;
+        } else {
+            // settle at the bottom
+            return mCollapsedTop;
+        }
+    }
+
+    /**
+     * Clamp a panel top between the collapsed and the expanded positions.
+     */
+    public int clampTop(int top) {
+        if (mSlidingUp) {
+            return Math.min(Math.max(top, mExpandedTop), mCollapsedTop);
+        } else {
+            return Math.min(Math.max(top, mCollapsedTop), mExpandedTop);
+        }
+    }
+}
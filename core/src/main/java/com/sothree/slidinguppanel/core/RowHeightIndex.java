@@ -0,0 +1,160 @@
+package com.sothree.slidinguppanel.core;
+
+import java.util.Arrays;
+
+/**
+ * Prefix-sum index of adapter row heights. Used by the list strategies of the
+ * ScrollableViewHelper to compute the exact scroll position of lists with variable height rows,
+ * where multiplying the index of the first visible row by its height is wrong.
+ *
+ * Rows whose height was never reported are assumed to have the default height. Updates, prefix
+ * queries and searches run in O(log n), so an adapter with millions of rows stays cheap to query
+ * on every touch event. Appending or removing rows at the end, e.g. when an adapter loads another
+ * page, only costs O(log n) per changed row.
+ */
+public class RowHeightIndex {
+    private final int mDefaultHeight;
+    private int mCount;
+    private int[] mHeights;
+    // Fenwick tree over mHeights, 1-based
+    private long[] mTree;
+
+    /**
+     * @param count         the number of rows in the adapter
+     * @param defaultHeight the height in pixels assumed for rows that were not measured yet
+     */
+    public RowHeightIndex(int count, int defaultHeight) {
+        if (count < 0) {
+            throw new IllegalArgumentException("Row count cannot be negative");
+        }
+        mDefaultHeight = defaultHeight;
+        mHeights = new int[0];
+        mTree = new long[1];
+        setCount(count);
+    }
+
+    /**
+     * @return the number of rows in the index
+     */
+    public int getCount() {
+        return mCount;
+    }
+
+    /**
+     * Resize the index, e.g. after the adapter data set changed. Heights of the rows that are
+     * kept are preserved, new rows get the default height.
+     *
+     * @param count the new number of rows
+     */
+    public void setCount(int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("Row count cannot be negative");
+        }
+        final int previousCount = mCount;
+        if (count <= previousCount) {
+            // The nodes up to the new count only cover rows that are kept
+            mCount = count;
+            return;
+        }
+        if (count > mHeights.length) {
+            final int capacity = Math.max(count, mHeights.length * 2);
+            mHeights = Arrays.copyOf(mHeights, capacity);
+            mTree = Arrays.copyOf(mTree, capacity + 1);
+        }
+        Arrays.fill(mHeights, previousCount, count, mDefaultHeight);
+        mCount = count;
+        if (count - previousCount > previousCount) {
+            rebuild();
+            return;
+        }
+        for (int i = previousCount + 1; i <= count; i++) {
+            // Node i holds the sum of the rows from i - lowbit(i) to i - 1
+            mTree[i] = mDefaultHeight + prefixSum(i - 1) - prefixSum(i - (i & -i));
+        }
+    }
+
+    /**
+     * Record the measured height of a row.
+     *
+     * @param position the adapter position of the row
+     * @param height   the height of the row in pixels
+     */
+    public void setHeight(int position, int height) {
+        if (position < 0 || position >= mCount) {
+            return;
+        }
+        final int delta = height - mHeights[position];
+        if (delta == 0) {
+            return;
+        }
+        mHeights[position] = height;
+        for (int i = position + 1; i <= mCount; i += i & -i) {
+            mTree[i] += delta;
+        }
+    }
+
+    /**
+     * @param position the adapter position of the row
+     * @return the known height of the row in pixels
+     */
+    public int getHeight(int position) {
+        return mHeights[position];
+    }
+
+    /**
+     * @param position the adapter position of the row
+     * @return the sum of the heights of all the rows above the given one
+     */
+    public long getOffsetOf(int position) {
+        return prefixSum(Math.min(position, mCount));
+    }
+
+    /**
+     * @return the sum of the heights of all the rows
+     */
+    public long getTotalHeight() {
+        return getOffsetOf(mCount);
+    }
+
+    /**
+     * @param offset a distance in pixels from the top of the first row
+     * @return the adapter position of the row containing the given offset, 0 if the offset is
+     * negative, or the row count if it is past the last row
+     */
+    public int findPosition(long offset) {
+        if (offset < 0) {
+            return 0;
+        }
+        // Descend the tree, keeping the largest position whose prefix sum is not above the offset
+        int position = 0;
+        long remaining = offset;
+        for (int step = Integer.highestOneBit(Math.max(mCount, 1)); step > 0; step >>= 1) {
+            final int next = position + step;
+            if (next <= mCount && mTree[next] <= remaining) {
+                position = next;
+                remaining -= mTree[next];
+            }
+        }
+        return position;
+    }
+
+    private long prefixSum(int position) {
+        long sum = 0;
+        for (int i = position; i > 0; i -= i & -i) {
+            sum += mTree[i];
+        }
+        return sum;
+    }
+
+    private void rebuild() {
+        // Linear time construction, each node pushes its sum to its parent
+        Arrays.fill(mTree, 0);
+        for (int i = 1; i <= mCount; i++) {
+            mTree[i] += mHeights[i - 1];
+            int parent = i + (i & -i);
+            if (parent <= mCount) {
+                mTree[parent] += mTree[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.sothree.slidinguppanel.core;
+
+/**
+ * Extrapolates the position of a pointer a short time ahead, to hide part of the latency between
+ * a touch sample and the frame that displays it.
+ *
+ * The recent samples are fitted with a quadratic least squares model, which gives the velocity
+ * and the acceleration of the pointer at the newest sample. The prediction is clamped so that it
+ * never reverses the direction of motion nor overshoots far beyond a constant velocity
+ * extrapolation, which keeps it stable when the finger stops or turns around.
+ */
+public class TouchPredictor {
+    /**
+     * Only the samples in this window before the newest one are fitted.
+     */
+    private static final long SAMPLE_WINDOW = 48; // ms
+
+    private static final int MIN_SAMPLES = 3;
+
+    /**
+     * Maximum ratio between the predicted displacement and the constant velocity one.
+     */
+    private static final float MAX_ACCELERATION_RATIO = 1.5f;
+
+    /**
+     * Predictions are skipped if the newest sample is older than this at the frame time, the
+     * finger has stopped.
+     */
+    private static final long MAX_SAMPLE_AGE = 32; // ms
+
+    /**
+     * Predict how far the pointer will have moved along the Y axis after the given time.
+     *
+     * @param samples the recent samples of the pointer
+     * @param now     the time of the frame being produced, e.g. its vsync time, in the time base
+     *                of the samples
+     * @param horizon how far ahead of the newest sample to predict, in ms
+     * @return the predicted displacement in pixels from the newest sample
+     */
+    public float predictDeltaY(TouchSampleBuffer samples, long now, long horizon) {
+        final int size = samples.size();
+        if (size < MIN_SAMPLES || horizon <= 0 || now - samples.getTime(0) > MAX_SAMPLE_AGE) {
+            return 0;
+        }
+
+        // Sums for the normal equations of y = a + b * t + c * t^2, t relative to the newest sample
+        final long newestTime = samples.getTime(0);
+        final float newestY = samples.getY(0);
+        double s0 = 0, s1 = 0, s2 = 0, s3 = 0, s4 = 0;
+        double sy = 0, sty = 0, st2y = 0;
+        int count = 0;
+        for (int age = 0; age < size; age++) {
+            final double t = samples.getTime(age) - newestTime;
+            if (t < -SAMPLE_WINDOW) {
+                break;
+            }
+            final double y = samples.getY(age) - newestY;
+            final double t2 = t * t;
+            s0 += 1;
+            s1 += t;
+            s2 += t2;
+            s3 += t2 * t;
+            s4 += t2 * t2;
+            sy += y;
+            sty += t * y;
+            st2y += t2 * y;
+            count++;
+        }
+        if (count < MIN_SAMPLES) {
+            return 0;
+        }
+
+        final double det = determinant(s0, s1, s2, s1, s2, s3, s2, s3, s4);
+        if (Math.abs(det) < 1e-9) {
+            return 0;
+        }
+        // Cramer's rule for the velocity (b) and half the acceleration (c)
+        final double b = determinant(s0, sy, s2, s1, sty, s3, s2, st2y, s4) / det;
+        final double c = determinant(s0, s1, sy, s1, s2, sty, s2, s3, st2y) / det;
+
+        final double linear = b * horizon;
+        double predicted = linear + c * horizon * horizon;
+        if (predicted * linear <= 0) {
+            // Never predict a reversal of the motion
+            return 0;
+        }
+        if (Math.abs(predicted) > Math.abs(linear) * MAX_ACCELERATION_RATIO) {
+            predicted = linear * MAX_ACCELERATION_RATIO;
+        }
+        return (float) predicted;
+    }
+
+    private static double determinant(double a, double b, double c,
+                                      double d, double e, double f,
+                                      double g, double h, double i) {
+        return a * (e * i - f * h) - b * (d * i - f * g) + c * (d * h - e * g);
+    }
+}
@@ -0,0 +1,99 @@
+package com.sothree.slidinguppanel.core;
+
+/**
+ * Fixed size ring buffer of the recent touch samples of one pointer, including the historical
+ * samples batched into each MotionEvent. Lets the drag position be evaluated at an arbitrary time
+ * rather than only at the time of the last event.
+ */
+public class TouchSampleBuffer {
+    public static final int CAPACITY = 32;
+
+    private final long[] mTimes = new long[CAPACITY];
+    private final float[] mX = new float[CAPACITY];
+    private final float[] mY = new float[CAPACITY];
+
+    // Index of the newest sample
+    private int mNewest = -1;
+    private int mSize;
+
+    public void clear() {
+        mNewest = -1;
+        mSize = 0;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Append a sample. Samples must be added in chronological order; a sample with the same time
+     * as the newest one replaces it.
+     */
+    public void add(long time, float x, float y) {
+        if (mSize > 0 && time < mTimes[mNewest]) {
+            return;
+        }
+        if (mSize == 0 || time > mTimes[mNewest]) {
+            mNewest = (mNewest + 1) % CAPACITY;
+            if (mSize < CAPACITY) {
+                mSize++;
+            }
+        }
+        mTimes[mNewest] = time;
+        mX[mNewest] = x;
+        mY[mNewest] = y;
+    }
+
+    /**
+     * @param age 0 for the newest sample, 1 for the one before, up to size() - 1
+     */
+    public long getTime(int age) {
+        return mTimes[indexOf(age)];
+    }
+
+    public float getX(int age) {
+        return mX[indexOf(age)];
+    }
+
+    public float getY(int age) {
+        return mY[indexOf(age)];
+    }
+
+    /**
+     * @return the X coordinate at the given time, linearly interpolated between the samples around
+     * it, or the closest sample if the time is outside of the buffered range
+     */
+    public float getXAt(long time) {
+        return valueAt(mX, time);
+    }
+
+    /**
+     * @return the Y coordinate at the given time, linearly interpolated between the samples around
+     * it, or the closest sample if the time is outside of the buffered range
+     */
+    public float getYAt(long time) {
+        return valueAt(mY, time);
+    }
+
+    private float valueAt(float[] values, long time) {
+        if (mSize == 0) {
+            return 0;
+        }
+        if (time >= mTimes[mNewest]) {
+            return values[mNewest];
+        }
+        for (int age = 1; age < mSize; age++) {
+            final int older = indexOf(age);
+            if (mTimes[older] <= time) {
+                final int newer = indexOf(age - 1);
+                final float alpha = (float) (time - mTimes[older]) / (mTimes[newer] - mTimes[older]);
+                return values[older] + alpha * (values[newer] - values[older]);
+            }
+        }
+        return values[indexOf(mSize - 1)];
+    }
+
+    private int indexOf(int age) {
+        return (mNewest - age + CAPACITY) % CAPACITY;
+    }
+}
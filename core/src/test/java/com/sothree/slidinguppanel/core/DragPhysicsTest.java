@@ -0,0 +1,78 @@
+package com.sothree.slidinguppanel.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Pins the settle durations to the values computed by ViewDragHelper before the physics moved to
+ * the core module.
+ */
+public class DragPhysicsTest {
+    private static final int MIN_VELOCITY = 100;
+    private static final int MAX_VELOCITY = 8000;
+    private static final int VERTICAL_RANGE = 840;
+    private static final int PARENT_WIDTH = 1080;
+
+    private static int verticalDuration(int dy, int yvel) {
+        return DragPhysics.computeSettleDuration(0, dy, 0, yvel, MIN_VELOCITY, MAX_VELOCITY,
+                0, VERTICAL_RANGE, PARENT_WIDTH);
+    }
+
+    private static int duration(int dx, int dy, int xvel, int yvel) {
+        return DragPhysics.computeSettleDuration(dx, dy, xvel, yvel, MIN_VELOCITY, MAX_VELOCITY,
+                500, VERTICAL_RANGE, PARENT_WIDTH);
+    }
+
+    @Test
+    public void zeroDistance() {
+        // Both weights are 0 / 0, the NaN duration casts to 0
+        assertEquals(0, verticalDuration(0, 0));
+        assertEquals(0, verticalDuration(0, 3000));
+        assertEquals(0, duration(0, 0, 0, 0));
+    }
+
+    @Test
+    public void withoutVelocity() {
+        assertEquals(384, verticalDuration(420, 0));
+        assertEquals(512, verticalDuration(-840, 0));
+        // Below the minimum velocity
+        assertEquals(384, verticalDuration(420, 50));
+    }
+
+    @Test
+    public void withVelocity() {
+        assertEquals(408, verticalDuration(420, 5000));
+        assertEquals(408, verticalDuration(420, -5000));
+        assertEquals(304, verticalDuration(840, 8000));
+        // Above the maximum velocity
+        assertEquals(240, verticalDuration(-300, -9000));
+    }
+
+    @Test
+    public void maximumDuration() {
+        assertEquals(DragPhysics.MAX_SETTLE_DURATION, verticalDuration(420, 2000));
+        assertEquals(DragPhysics.MAX_SETTLE_DURATION, verticalDuration(100, 400));
+    }
+
+    @Test
+    public void bothAxes() {
+        assertEquals(370, duration(200, 400, 0, 0));
+        assertEquals(426, duration(200, 400, 3000, 6000));
+        assertEquals(600, duration(200, 400, 1000, 3000));
+        assertEquals(316, duration(-250, 0, -6000, 0));
+        assertEquals(600, duration(-250, 0, -2000, 0));
+    }
+
+    @Test
+    public void clampMagnitude() {
+        assertEquals(0, DragPhysics.clampMag(50, MIN_VELOCITY, MAX_VELOCITY));
+        assertEquals(0, DragPhysics.clampMag(-50, MIN_VELOCITY, MAX_VELOCITY));
+        assertEquals(100, DragPhysics.clampMag(100, MIN_VELOCITY, MAX_VELOCITY));
+        assertEquals(MAX_VELOCITY, DragPhysics.clampMag(9000, MIN_VELOCITY, MAX_VELOCITY));
+        assertEquals(-MAX_VELOCITY, DragPhysics.clampMag(-9000, MIN_VELOCITY, MAX_VELOCITY));
+        assertEquals(-2.5f, DragPhysics.clampMag(-2.5f, 1f, 3f), 0);
+        assertEquals(0f, DragPhysics.clampMag(0.5f, 1f, 3f), 0);
+        assertEquals(3f, DragPhysics.clampMag(4f, 1f, 3f), 0);
+    }
+}
@@ -0,0 +1,96 @@
+package com.sothree.slidinguppanel.core;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Pins the panel positions and the release targets to the values computed by
+ * SlidingUpPanelLayout before the geometry moved to the core module.
+ */
+public class PanelGeometryTest {
+    private static final int LAYOUT_HEIGHT = 1920;
+    private static final int PANEL_HEIGHT = 160;
+    private static final int PANEL_MEASURED_HEIGHT = 1000;
+
+    private static final int COLLAPSED_TOP = 1760;
+    private static final int ANCHORED_TOP = 1340;
+    private static final int EXPANDED_TOP = 920;
+
+    private static final float UP = 1;
+    private static final float DOWN = -1;
+
+    private PanelGeometry mGeometry;
+
+    @Before
+    public void setUp() {
+        mGeometry = geometry(true, 0.5f);
+    }
+
+    private static PanelGeometry geometry(boolean slidingUp, float anchorPoint) {
+        PanelGeometry geometry = new PanelGeometry();
+        geometry.update(slidingUp, LAYOUT_HEIGHT, 0, 0, PANEL_HEIGHT, PANEL_MEASURED_HEIGHT, anchorPoint);
+        return geometry;
+    }
+
+    @Test
+    public void restingTops() {
+        assertEquals(840, mGeometry.getSlideRange());
+        assertEquals(COLLAPSED_TOP, mGeometry.getCollapsedTop());
+        assertEquals(ANCHORED_TOP, mGeometry.getAnchoredTop());
+        assertEquals(EXPANDED_TOP, mGeometry.getExpandedTop());
+        assertEquals(LAYOUT_HEIGHT, mGeometry.getHiddenTop());
+
+        PanelGeometry slidingDown = geometry(false, 0.5f);
+        assertEquals(-840, slidingDown.getCollapsedTop());
+        assertEquals(-420, slidingDown.getAnchoredTop());
+        assertEquals(0, slidingDown.getExpandedTop());
+        assertEquals(-1000, slidingDown.getHiddenTop());
+    }
+
+    @Test
+    public void releaseTowardsExpanded() {
+        assertEquals(ANCHORED_TOP, mGeometry.computeReleaseTop(0.2f, UP));
+        assertEquals(ANCHORED_TOP, mGeometry.computeReleaseTop(0.5f, UP));
+        assertEquals(EXPANDED_TOP, mGeometry.computeReleaseTop(0.7f, UP));
+    }
+
+    @Test
+    public void releaseTowardsCollapsed() {
+        assertEquals(ANCHORED_TOP, mGeometry.computeReleaseTop(0.7f, DOWN));
+        assertEquals(ANCHORED_TOP, mGeometry.computeReleaseTop(0.5f, DOWN));
+        assertEquals(COLLAPSED_TOP, mGeometry.computeReleaseTop(0.3f, DOWN));
+    }
+
+    @Test
+    public void releaseWithoutVelocity() {
+        assertEquals(EXPANDED_TOP, mGeometry.computeReleaseTop(0.9f, 0));
+        assertEquals(EXPANDED_TOP, mGeometry.computeReleaseTop(0.75f, 0));
+        assertEquals(ANCHORED_TOP, mGeometry.computeReleaseTop(0.74f, 0));
+        assertEquals(ANCHORED_TOP, mGeometry.computeReleaseTop(0.25f, 0));
+        assertEquals(COLLAPSED_TOP, mGeometry.computeReleaseTop(0.24f, 0));
+        assertEquals(COLLAPSED_TOP, mGeometry.computeReleaseTop(0, 0));
+    }
+
+    @Test
+    public void releaseWithAnchorAtExpanded() {
+        PanelGeometry geometry = geometry(true, 1.0f);
+        assertEquals(EXPANDED_TOP, geometry.getAnchoredTop());
+        assertEquals(EXPANDED_TOP, geometry.computeReleaseTop(0.3f, UP));
+        assertEquals(EXPANDED_TOP, geometry.computeReleaseTop(1.0f, UP));
+        assertEquals(EXPANDED_TOP, geometry.computeReleaseTop(1.0f, DOWN));
+        assertEquals(COLLAPSED_TOP, geometry.computeReleaseTop(0.6f, DOWN));
+        assertEquals(EXPANDED_TOP, geometry.computeReleaseTop(1.0f, 0));
+        assertEquals(EXPANDED_TOP, geometry.computeReleaseTop(0.5f, 0));
+        assertEquals(COLLAPSED_TOP, geometry.computeReleaseTop(0.49f, 0));
+    }
+
+    @Test
+    public void releaseSlidingDown() {
+        PanelGeometry geometry = geometry(false, 0.5f);
+        assertEquals(-420, geometry.computeReleaseTop(0.2f, UP));
+        assertEquals(0, geometry.computeReleaseTop(0.7f, UP));
+        assertEquals(-840, geometry.computeReleaseTop(0.3f, DOWN));
+    }
+}
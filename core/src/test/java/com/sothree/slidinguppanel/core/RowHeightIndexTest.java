@@ -0,0 +1,144 @@
+package com.sothree.slidinguppanel.core;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class RowHeightIndexTest {
+    private static final int DEFAULT_HEIGHT = 48;
+
+    @Test
+    public void emptyIndex() {
+        RowHeightIndex index = new RowHeightIndex(0, DEFAULT_HEIGHT);
+        assertEquals(0, index.getCount());
+        assertEquals(0, index.getTotalHeight());
+        assertEquals(0, index.getOffsetOf(0));
+        assertEquals(0, index.findPosition(0));
+        assertEquals(0, index.findPosition(100));
+        // Ignored, there is no such row
+        index.setHeight(0, 10);
+        assertEquals(0, index.getTotalHeight());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeCount() {
+        new RowHeightIndex(-1, DEFAULT_HEIGHT);
+    }
+
+    @Test
+    public void defaultHeights() {
+        RowHeightIndex index = new RowHeightIndex(10, DEFAULT_HEIGHT);
+        assertEquals(10 * DEFAULT_HEIGHT, index.getTotalHeight());
+        for (int i = 0; i <= 10; i++) {
+            assertEquals(i * DEFAULT_HEIGHT, index.getOffsetOf(i));
+        }
+    }
+
+    @Test
+    public void firstAndLastRows() {
+        RowHeightIndex index = new RowHeightIndex(16, DEFAULT_HEIGHT);
+        index.setHeight(0, 100);
+        index.setHeight(15, 7);
+        assertEquals(0, index.getOffsetOf(0));
+        assertEquals(100, index.getOffsetOf(1));
+        assertEquals(100 + 14 * DEFAULT_HEIGHT, index.getOffsetOf(15));
+        assertEquals(100 + 14 * DEFAULT_HEIGHT + 7, index.getTotalHeight());
+        // Positions past the end are clamped to the total
+        assertEquals(index.getTotalHeight(), index.getOffsetOf(17));
+    }
+
+    @Test
+    public void outOfRangeUpdatesAreIgnored() {
+        RowHeightIndex index = new RowHeightIndex(4, DEFAULT_HEIGHT);
+        index.setHeight(-1, 1000);
+        index.setHeight(4, 1000);
+        assertEquals(4 * DEFAULT_HEIGHT, index.getTotalHeight());
+    }
+
+    @Test
+    public void resizeKeepsKnownHeights() {
+        RowHeightIndex index = new RowHeightIndex(3, DEFAULT_HEIGHT);
+        index.setHeight(1, 10);
+        index.setCount(5);
+        assertEquals(10, index.getHeight(1));
+        assertEquals(DEFAULT_HEIGHT, index.getHeight(4));
+        assertEquals(4 * DEFAULT_HEIGHT + 10, index.getTotalHeight());
+        index.setCount(2);
+        assertEquals(DEFAULT_HEIGHT + 10, index.getTotalHeight());
+        index.setCount(0);
+        assertEquals(0, index.getTotalHeight());
+    }
+
+    @Test
+    public void findPositionBoundaries() {
+        RowHeightIndex index = new RowHeightIndex(8, 10);
+        assertEquals(0, index.findPosition(-5));
+        assertEquals(0, index.findPosition(0));
+        assertEquals(0, index.findPosition(9));
+        assertEquals(1, index.findPosition(10));
+        assertEquals(7, index.findPosition(79));
+        assertEquals(8, index.findPosition(80));
+        assertEquals(8, index.findPosition(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void matchesNaivePrefixSums() {
+        final Random random = new Random(7);
+        // Sizes around powers of two exercise the edges of the tree
+        for (int count : new int[]{1, 2, 3, 7, 8, 9, 63, 64, 65, 1000}) {
+            RowHeightIndex index = new RowHeightIndex(count, DEFAULT_HEIGHT);
+            final int[] heights = new int[count];
+            for (int i = 0; i < count; i++) {
+                heights[i] = DEFAULT_HEIGHT;
+            }
+            for (int update = 0; update < count * 3; update++) {
+                final int position = random.nextInt(count);
+                heights[position] = 1 + random.nextInt(200);
+                index.setHeight(position, heights[position]);
+            }
+            long sum = 0;
+            for (int i = 0; i < count; i++) {
+                assertEquals("count " + count + " offset of " + i, sum, index.getOffsetOf(i));
+                assertEquals("count " + count + " row at " + sum, i, index.findPosition(sum));
+                assertEquals("count " + count + " row at " + (sum + heights[i] - 1), i,
+                        index.findPosition(sum + heights[i] - 1));
+                sum += heights[i];
+            }
+            assertEquals(sum, index.getTotalHeight());
+            assertEquals(count, index.findPosition(sum));
+        }
+    }
+
+    @Test
+    public void appendedRowsMatchNaivePrefixSums() {
+        final Random random = new Random(11);
+        RowHeightIndex index = new RowHeightIndex(5, DEFAULT_HEIGHT);
+        final int[] heights = new int[300];
+        int count = 5;
+        for (int i = 0; i < heights.length; i++) {
+            heights[i] = DEFAULT_HEIGHT;
+        }
+        // Pages of a few rows appended or dropped at the end, like an adapter loading more data
+        while (count < heights.length) {
+            final int next = Math.min(heights.length, Math.max(1, count + random.nextInt(12) - 3));
+            for (int i = count; i < next; i++) {
+                heights[i] = DEFAULT_HEIGHT;
+            }
+            index.setCount(next);
+            count = next;
+            final int position = random.nextInt(count);
+            heights[position] = 1 + random.nextInt(200);
+            index.setHeight(position, heights[position]);
+
+            long sum = 0;
+            for (int i = 0; i < count; i++) {
+                assertEquals("count " + count + " offset of " + i, sum, index.getOffsetOf(i));
+                sum += heights[i];
+            }
+            assertEquals(sum, index.getTotalHeight());
+            assertEquals(count, index.findPosition(sum));
+        }
+    }
+}
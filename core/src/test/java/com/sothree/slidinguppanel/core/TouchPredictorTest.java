@@ -0,0 +1,201 @@
+package com.sothree.slidinguppanel.core;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Replays drag traces sampled like a touch screen and compares the predicted positions with the
+ * positions the trace actually reaches one frame later.
+ */
+public class TouchPredictorTest {
+    private static final long SAMPLE_INTERVAL = 8; // ms
+    private static final long HORIZON = 16; // ms
+    private static final long DURATION = 400; // ms
+    // Samples are rounded to whole pixels, plus this much noise
+    private static final float NOISE = 0.5f;
+    // Nothing is predicted before the fit has enough samples
+    private static final int WARM_UP = 3;
+
+    private final TouchPredictor mPredictor = new TouchPredictor();
+    private TouchSampleBuffer mSamples;
+
+    private interface Trace {
+        float y(long time);
+    }
+
+    // Constant velocity of 1.2px/ms
+    private static final Trace STEADY = new Trace() {
+        @Override
+        public float y(long time) {
+            return 100 + 1.2f * time;
+        }
+    };
+
+    // Starts at 3px/ms and decelerates until it stops at 300ms
+    private static final Trace FLING = new Trace() {
+        @Override
+        public float y(long time) {
+            final long t = Math.min(time, 300);
+            return 800 - 3f * t + 0.005f * t * t;
+        }
+    };
+
+    // Accelerates from rest at 0.01px/ms^2
+    private static final Trace ACCELERATING = new Trace() {
+        @Override
+        public float y(long time) {
+            return 200 + 0.005f * time * time;
+        }
+    };
+
+    // Moves down, turns around at 200ms and moves back up
+    private static final Trace REVERSAL = new Trace() {
+        @Override
+        public float y(long time) {
+            final float t = time - 200;
+            return 600 - 0.01f * t * t;
+        }
+    };
+
+    @Before
+    public void setUp() {
+        mSamples = new TouchSampleBuffer();
+    }
+
+    /**
+     * Replays the trace and returns the mean absolute error of the predicted position, after
+     * checking that every prediction stays on the side of the motion and within the clamp.
+     */
+    private float replay(Trace trace, boolean predict) {
+        final Random random = new Random(42);
+        float totalError = 0;
+        int count = 0;
+        for (long time = 0; time <= DURATION; time += SAMPLE_INTERVAL) {
+            final float y = Math.round(trace.y(time)) + (random.nextFloat() * 2 - 1) * NOISE;
+            mSamples.add(time, 0, y);
+            final float delta = predict ? mPredictor.predictDeltaY(mSamples, time, HORIZON) : 0;
+            if (predict && mSamples.size() >= 2) {
+                assertWithinClamp(delta);
+            }
+            if (mSamples.size() >= WARM_UP) {
+                final float actual = trace.y(time + HORIZON);
+                totalError += Math.abs(y + delta - actual);
+                count++;
+            }
+        }
+        return totalError / count;
+    }
+
+    private void assertWithinClamp(float delta) {
+        // Constant velocity extrapolation from the last two samples, the fit is close to it
+        final float velocity = (mSamples.getY(0) - mSamples.getY(1))
+                / (mSamples.getTime(0) - mSamples.getTime(1));
+        final float linear = velocity * HORIZON;
+        if (delta != 0) {
+            assertTrue("reversed: " + delta + " for " + linear, delta * linear > 0
+                    || Math.abs(linear) < 4 * NOISE);
+        }
+        // Noise on the last two samples skews the slope of the pair, hence the slack
+        assertTrue("overshot: " + delta + " for " + linear,
+                Math.abs(delta) <= Math.abs(linear) * 1.5f + 4 * NOISE * HORIZON / SAMPLE_INTERVAL);
+    }
+
+    @Test
+    public void steadyDragIsPredictedWithinOnePixel() {
+        final float error = replay(STEADY, true);
+        assertTrue("error " + error, error < 1);
+        setUp();
+        assertTrue(replay(STEADY, false) > 15);
+    }
+
+    @Test
+    public void flingIsPredictedWithinTwoPixels() {
+        final float lag = replay(FLING, false);
+        setUp();
+        final float error = replay(FLING, true);
+        assertTrue("error " + error + ", lag " + lag, error < 2 && error < lag / 8);
+    }
+
+    @Test
+    public void accelerationIsPredictedWithinTwoPixels() {
+        final float lag = replay(ACCELERATING, false);
+        setUp();
+        final float error = replay(ACCELERATING, true);
+        assertTrue("error " + error + ", lag " + lag, error < 2 && error < lag / 8);
+    }
+
+    @Test
+    public void accelerationIsClampedToOneAndAHalfTimesTheVelocity() {
+        // y = t^3 / 100 makes the quadratic term dominate the velocity term
+        for (long time = 0; time <= 48; time += SAMPLE_INTERVAL) {
+            mSamples.add(time, 0, time * time * time / 100f);
+        }
+        final float delta = mPredictor.predictDeltaY(mSamples, 48, HORIZON);
+        final float linear = (mSamples.getY(0) - mSamples.getY(1)) / SAMPLE_INTERVAL * HORIZON;
+        assertTrue(delta > linear);
+        assertTrue(delta <= linear * 1.5f);
+    }
+
+    @Test
+    public void reversalIsNeverPredicted() {
+        replay(REVERSAL, true);
+        // Decelerating towards the turn: the quadratic extrapolation alone would move backwards
+        setUp();
+        for (long time = 0; time <= 48; time += SAMPLE_INTERVAL) {
+            mSamples.add(time, 0, 100 + 2 * time - 0.02f * time * time);
+        }
+        final float delta = mPredictor.predictDeltaY(mSamples, 48, 32);
+        assertEquals(0, delta, 0);
+    }
+
+    @Test
+    public void stoppedFingerIsNotPredicted() {
+        for (long time = 0; time <= 48; time += SAMPLE_INTERVAL) {
+            mSamples.add(time, 0, 100 + 2 * time);
+        }
+        assertTrue(mPredictor.predictDeltaY(mSamples, 48, HORIZON) > 0);
+        // No new sample for longer than the finger takes to move between frames
+        assertEquals(0, mPredictor.predictDeltaY(mSamples, 48 + 40, HORIZON), 0);
+    }
+
+    @Test
+    public void tooFewSamples() {
+        mSamples.add(0, 0, 0);
+        mSamples.add(8, 0, 10);
+        assertEquals(0, mPredictor.predictDeltaY(mSamples, 8, HORIZON), 0);
+        mSamples.add(16, 0, 20);
+        assertEquals(0, mPredictor.predictDeltaY(mSamples, 16, 0), 0);
+    }
+
+    @Test
+    public void bufferInterpolatesBetweenSamples() {
+        mSamples.add(0, 0, 0);
+        mSamples.add(10, 20, 100);
+        assertEquals(50, mSamples.getYAt(5), 0.001f);
+        assertEquals(10, mSamples.getXAt(5), 0.001f);
+        // Clamped to the buffered range
+        assertEquals(0, mSamples.getYAt(-5), 0);
+        assertEquals(100, mSamples.getYAt(15), 0);
+    }
+
+    @Test
+    public void bufferKeepsNewestSamples() {
+        for (int i = 0; i < TouchSampleBuffer.CAPACITY + 5; i++) {
+            mSamples.add(i, 0, i);
+        }
+        assertEquals(TouchSampleBuffer.CAPACITY, mSamples.size());
+        assertEquals(TouchSampleBuffer.CAPACITY + 4, mSamples.getTime(0));
+        assertEquals(5, mSamples.getTime(TouchSampleBuffer.CAPACITY - 1));
+        // Older samples are dropped, one at the same time replaces the newest
+        mSamples.add(0, 0, 1000);
+        mSamples.add(TouchSampleBuffer.CAPACITY + 4, 0, 1000);
+        assertEquals(TouchSampleBuffer.CAPACITY, mSamples.size());
+        assertEquals(1000, mSamples.getY(0), 0);
+        assertEquals(TouchSampleBuffer.CAPACITY + 3, mSamples.getY(1), 0);
+    }
+}
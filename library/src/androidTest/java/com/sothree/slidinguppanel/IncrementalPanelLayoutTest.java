@@ -0,0 +1,215 @@
+package com.sothree.slidinguppanel;
+
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.FrameLayout;
+import android.widget.LinearLayout;
+import android.widget.TextView;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that a size change of the panel content measures and lays out the panel alone, and that
+ * any other layout request made in the same frame still lays out the main view. Also compares the
+ * cost of panel content changes with and without incremental layout, the timings are logged with
+ * the tag IncrementalPanelLayout.
+ */
+@RunWith(AndroidJUnit4.class)
+public class IncrementalPanelLayoutTest {
+    private static final String TAG = "IncrementalPanelLayout";
+
+    private static final int WIDTH = 1080;
+    private static final int HEIGHT = 1920;
+    private static final int PANEL_HEIGHT = 160;
+    private static final int CONTENT_HEIGHT = 600;
+    private static final int MAIN_VIEW_ROWS = 200;
+    private static final int ITERATIONS = 200;
+
+    private SlidingUpPanelLayout mLayout;
+    private CountingView mMainView;
+    private View mContent;
+
+    private static class CountingView extends View {
+        int mMeasureCount;
+        int mLayoutCount;
+
+        CountingView(Context context) {
+            super(context);
+        }
+
+        @Override
+        protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+            mMeasureCount++;
+            super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+        }
+
+        @Override
+        public void layout(int l, int t, int r, int b) {
+            mLayoutCount++;
+            super.layout(l, t, r, b);
+        }
+    }
+
+    private void buildLayout() {
+        final Context context = InstrumentationRegistry.getTargetContext();
+        mMainView = new CountingView(context);
+        buildLayout(mMainView);
+        mMainView.mMeasureCount = 0;
+        mMainView.mLayoutCount = 0;
+    }
+
+    private void buildLayout(View mainView) {
+        final Context context = InstrumentationRegistry.getTargetContext();
+        mLayout = new SlidingUpPanelLayout(context);
+        mLayout.setPanelHeight(PANEL_HEIGHT);
+        mLayout.setIncrementalPanelLayoutEnabled(true);
+        mLayout.addView(mainView, new SlidingUpPanelLayout.LayoutParams(
+                ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT));
+        final FrameLayout panel = new FrameLayout(context);
+        mContent = new View(context);
+        panel.addView(mContent, new FrameLayout.LayoutParams(
+                ViewGroup.LayoutParams.MATCH_PARENT, CONTENT_HEIGHT));
+        mLayout.addView(panel, new SlidingUpPanelLayout.LayoutParams(
+                ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.WRAP_CONTENT));
+        mLayout.forceLayout();
+        measureAndLayout();
+        mLayout.resetMeasureCounters();
+    }
+
+    private void measureAndLayout() {
+        mLayout.measure(View.MeasureSpec.makeMeasureSpec(WIDTH, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(HEIGHT, View.MeasureSpec.EXACTLY));
+        mLayout.layout(0, 0, WIDTH, HEIGHT);
+    }
+
+    private void resizeContent(int height) {
+        mContent.getLayoutParams().height = height;
+        mContent.requestLayout();
+    }
+
+    @Test
+    public void contentChangeLaysOutPanelAlone() {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                buildLayout();
+                resizeContent(CONTENT_HEIGHT * 2);
+                measureAndLayout();
+
+                assertEquals(1, mLayout.getIncrementalPanelLayoutCount());
+                assertEquals(1, mLayout.getPanelMeasureCount());
+                assertEquals(0, mLayout.getMainViewMeasureCount());
+                assertEquals(0, mMainView.mMeasureCount);
+                assertEquals(0, mMainView.mLayoutCount);
+                final View panel = mLayout.getChildAt(1);
+                assertEquals(CONTENT_HEIGHT * 2, panel.getHeight());
+                assertEquals(HEIGHT - PANEL_HEIGHT, panel.getTop());
+            }
+        });
+    }
+
+    @Test
+    public void ownRequestLaysOutMainView() {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                buildLayout();
+                resizeContent(CONTENT_HEIGHT * 2);
+                mLayout.requestLayout();
+                measureAndLayout();
+
+                assertEquals(0, mLayout.getIncrementalPanelLayoutCount());
+                assertEquals(1, mMainView.mLayoutCount);
+                assertEquals(CONTENT_HEIGHT * 2, mLayout.getChildAt(1).getHeight());
+            }
+        });
+    }
+
+    @Test
+    public void paddingChangeResizesMainView() {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                buildLayout();
+                resizeContent(CONTENT_HEIGHT * 2);
+                mLayout.setPadding(0, PANEL_HEIGHT, 0, 0);
+                measureAndLayout();
+
+                assertEquals(0, mLayout.getIncrementalPanelLayoutCount());
+                assertEquals(1, mMainView.mMeasureCount);
+                assertEquals(1, mMainView.mLayoutCount);
+                assertEquals(PANEL_HEIGHT, mMainView.getTop());
+                assertEquals(HEIGHT - PANEL_HEIGHT * 2, mMainView.getHeight());
+            }
+        });
+    }
+
+    @Test
+    public void mainViewRequestLaysOutMainView() {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                buildLayout();
+                resizeContent(CONTENT_HEIGHT * 2);
+                mMainView.requestLayout();
+                measureAndLayout();
+
+                assertEquals(0, mLayout.getIncrementalPanelLayoutCount());
+                assertEquals(1, mMainView.mMeasureCount);
+                assertEquals(1, mMainView.mLayoutCount);
+            }
+        });
+    }
+
+    /**
+     * @return The time taken by the layout passes following content size changes, in ns
+     */
+    private long timeContentChanges(boolean incremental) {
+        mLayout.setIncrementalPanelLayoutEnabled(incremental);
+        final long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            resizeContent(i % 2 == 0 ? CONTENT_HEIGHT * 2 : CONTENT_HEIGHT);
+            measureAndLayout();
+        }
+        return System.nanoTime() - start;
+    }
+
+    @Test
+    public void contentChangeTimings() {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                final Context context = InstrumentationRegistry.getTargetContext();
+                final LinearLayout mainView = new LinearLayout(context);
+                mainView.setOrientation(LinearLayout.VERTICAL);
+                for (int i = 0; i < MAIN_VIEW_ROWS; i++) {
+                    final TextView row = new TextView(context);
+                    row.setText("Row " + i);
+                    mainView.addView(row);
+                }
+                buildLayout(mainView);
+
+                // Warm up both paths before timing them
+                timeContentChanges(false);
+                timeContentChanges(true);
+                mLayout.resetMeasureCounters();
+
+                final long fullNanos = timeContentChanges(false);
+                assertEquals(0, mLayout.getIncrementalPanelLayoutCount());
+                final long incrementalNanos = timeContentChanges(true);
+                assertEquals(ITERATIONS, mLayout.getIncrementalPanelLayoutCount());
+
+                Log.i(TAG, ITERATIONS + " content changes, " + MAIN_VIEW_ROWS
+                        + " main view rows: full " + fullNanos / 1000 + "us, incremental "
+                        + incrementalNanos / 1000 + "us");
+            }
+        });
+    }
+}
@@ -0,0 +1,118 @@
+package com.sothree.slidinguppanel;
+
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.FrameLayout;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks with the measure counters that a measure pass only measures the children whose specs
+ * changed or that requested a layout, and that the skipped children keep a valid measurement.
+ */
+@RunWith(AndroidJUnit4.class)
+public class MeasureCountersTest {
+    private static final int WIDTH = 1080;
+    private static final int HEIGHT = 1920;
+    private static final int PANEL_HEIGHT = 160;
+    private static final int CONTENT_HEIGHT = 600;
+
+    private SlidingUpPanelLayout mLayout;
+    private View mMainView;
+    private View mContent;
+
+    private void buildLayout() {
+        final Context context = InstrumentationRegistry.getTargetContext();
+        mLayout = new SlidingUpPanelLayout(context);
+        mLayout.setPanelHeight(PANEL_HEIGHT);
+        mMainView = new View(context);
+        mLayout.addView(mMainView, new SlidingUpPanelLayout.LayoutParams(
+                ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT));
+        final FrameLayout panel = new FrameLayout(context);
+        mContent = new View(context);
+        panel.addView(mContent, new FrameLayout.LayoutParams(
+                ViewGroup.LayoutParams.MATCH_PARENT, CONTENT_HEIGHT));
+        mLayout.addView(panel, new SlidingUpPanelLayout.LayoutParams(
+                ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.WRAP_CONTENT));
+        measureAndLayout(WIDTH);
+    }
+
+    private void measureAndLayout(int width) {
+        // Stands for a layout request coming from outside of the layout
+        mLayout.forceLayout();
+        mLayout.measure(View.MeasureSpec.makeMeasureSpec(width, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(HEIGHT, View.MeasureSpec.EXACTLY));
+        mLayout.layout(0, 0, width, HEIGHT);
+    }
+
+    @Test
+    public void unchangedChildrenAreNotMeasured() {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                buildLayout();
+                mLayout.resetMeasureCounters();
+
+                measureAndLayout(WIDTH);
+                assertEquals(1, mLayout.getMeasurePassCount());
+                assertEquals(0, mLayout.getMainViewMeasureCount());
+                assertEquals(0, mLayout.getPanelMeasureCount());
+                assertEquals(HEIGHT - PANEL_HEIGHT, mMainView.getMeasuredHeight());
+                assertEquals(CONTENT_HEIGHT, mLayout.getChildAt(1).getMeasuredHeight());
+            }
+        });
+    }
+
+    @Test
+    public void childRequestingLayoutIsMeasuredAlone() {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                buildLayout();
+                mLayout.resetMeasureCounters();
+
+                mContent.getLayoutParams().height = CONTENT_HEIGHT / 2;
+                mContent.requestLayout();
+                measureAndLayout(WIDTH);
+                assertEquals(0, mLayout.getMainViewMeasureCount());
+                assertEquals(1, mLayout.getPanelMeasureCount());
+                assertEquals(CONTENT_HEIGHT / 2, mLayout.getChildAt(1).getMeasuredHeight());
+
+                mMainView.requestLayout();
+                measureAndLayout(WIDTH);
+                assertEquals(1, mLayout.getMainViewMeasureCount());
+                assertEquals(1, mLayout.getPanelMeasureCount());
+            }
+        });
+    }
+
+    @Test
+    public void changedSpecsAreMeasured() {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                buildLayout();
+                mLayout.resetMeasureCounters();
+
+                // The main view is sized by the panel height, the panel is not
+                mLayout.setPanelHeight(PANEL_HEIGHT * 2);
+                measureAndLayout(WIDTH);
+                assertEquals(1, mLayout.getMainViewMeasureCount());
+                assertEquals(0, mLayout.getPanelMeasureCount());
+                assertEquals(HEIGHT - PANEL_HEIGHT * 2, mMainView.getMeasuredHeight());
+
+                measureAndLayout(WIDTH / 2);
+                assertEquals(2, mLayout.getMainViewMeasureCount());
+                assertEquals(1, mLayout.getPanelMeasureCount());
+                assertEquals(WIDTH / 2, mMainView.getMeasuredWidth());
+                assertEquals(WIDTH / 2, mLayout.getChildAt(1).getMeasuredWidth());
+            }
+        });
+    }
+}
@@ -0,0 +1,141 @@
+package com.sothree.slidinguppanel;
+
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.LinearLayout;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that a collapsed panel with a header view only measures the header when its content
+ * changes, and that the rest of the panel is measured and laid out once the panel is expanded.
+ */
+@RunWith(AndroidJUnit4.class)
+public class PanelHeaderMeasureTest {
+    private static final int WIDTH = 1080;
+    private static final int HEIGHT = 1920;
+    private static final int PANEL_HEIGHT = 160;
+    private static final int BODY_HEIGHT = 600;
+
+    private SlidingUpPanelLayout mLayout;
+    private LinearLayout mPanel;
+    private View mHeader;
+    private CountingView mBody;
+
+    /**
+     * A view that counts how many times it was measured.
+     */
+    private static class CountingView extends View {
+        int measureCount;
+
+        CountingView(Context context) {
+            super(context);
+        }
+
+        @Override
+        protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+            measureCount++;
+            super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+        }
+    }
+
+    private void buildLayout() {
+        final Context context = InstrumentationRegistry.getTargetContext();
+        mLayout = new SlidingUpPanelLayout(context);
+        mLayout.setPanelHeight(PANEL_HEIGHT);
+        mLayout.addView(new View(context), new SlidingUpPanelLayout.LayoutParams(
+                ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT));
+        mPanel = new LinearLayout(context);
+        mPanel.setOrientation(LinearLayout.VERTICAL);
+        mHeader = new View(context);
+        mPanel.addView(mHeader, new LinearLayout.LayoutParams(
+                ViewGroup.LayoutParams.MATCH_PARENT, PANEL_HEIGHT));
+        mBody = new CountingView(context);
+        mPanel.addView(mBody, new LinearLayout.LayoutParams(
+                ViewGroup.LayoutParams.MATCH_PARENT, BODY_HEIGHT));
+        mLayout.addView(mPanel, new SlidingUpPanelLayout.LayoutParams(
+                ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.WRAP_CONTENT));
+        mLayout.setPanelHeaderView(mHeader);
+        measureAndLayout();
+        mLayout.resetMeasureCounters();
+        mBody.measureCount = 0;
+    }
+
+    private void measureAndLayout() {
+        mLayout.forceLayout();
+        mLayout.measure(View.MeasureSpec.makeMeasureSpec(WIDTH, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(HEIGHT, View.MeasureSpec.EXACTLY));
+        mLayout.layout(0, 0, WIDTH, HEIGHT);
+    }
+
+    private void resizeBody(int height) {
+        mBody.getLayoutParams().height = height;
+        mBody.requestLayout();
+    }
+
+    @Test
+    public void collapsedPanelMeasuresHeaderOnly() {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                buildLayout();
+
+                resizeBody(BODY_HEIGHT * 2);
+                assertTrue(mLayout.isLayoutRequested());
+                measureAndLayout();
+                assertEquals(0, mLayout.getPanelMeasureCount());
+                assertEquals(0, mBody.measureCount);
+                assertEquals(PANEL_HEIGHT + BODY_HEIGHT, mPanel.getMeasuredHeight());
+                assertFalse(mPanel.isLayoutRequested());
+
+                // The header is measured and laid out, and its requests still reach the layout
+                mHeader.getLayoutParams().height = PANEL_HEIGHT / 2;
+                mHeader.requestLayout();
+                assertTrue(mLayout.isLayoutRequested());
+                measureAndLayout();
+                assertEquals(0, mBody.measureCount);
+                assertEquals(PANEL_HEIGHT / 2, mHeader.getMeasuredHeight());
+                assertEquals(PANEL_HEIGHT / 2, mHeader.getHeight());
+                assertFalse(mHeader.isLayoutRequested());
+            }
+        });
+    }
+
+    @Test
+    public void contentIsMeasuredOnceExpanded() {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                buildLayout();
+
+                resizeBody(BODY_HEIGHT * 2);
+                measureAndLayout();
+                resizeBody(BODY_HEIGHT / 2);
+                measureAndLayout();
+                assertEquals(0, mBody.measureCount);
+
+                // Measured and laid out before the panel starts to move
+                mLayout.setPanelState(SlidingUpPanelLayout.PanelState.EXPANDED);
+                assertEquals(1, mLayout.getPanelMeasureCount());
+                assertEquals(1, mBody.measureCount);
+                assertEquals(PANEL_HEIGHT + BODY_HEIGHT / 2, mPanel.getMeasuredHeight());
+                assertEquals(BODY_HEIGHT / 2, mBody.getHeight());
+                assertFalse(mBody.isLayoutRequested());
+
+                // While the panel settles open, content changes measure the whole panel
+                resizeBody(BODY_HEIGHT);
+                measureAndLayout();
+                assertEquals(2, mLayout.getPanelMeasureCount());
+                assertEquals(PANEL_HEIGHT + BODY_HEIGHT, mPanel.getMeasuredHeight());
+            }
+        });
+    }
+}
@@ -0,0 +1,114 @@
+package com.sothree.slidinguppanel;
+
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.view.View;
+import android.view.ViewGroup;
+import android.view.animation.LinearInterpolator;
+import android.widget.FrameLayout;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the main view meets the panel on every frame of a panel height animation without
+ * being measured, whether the height grows or shrinks, and that the final layout commits it.
+ */
+@RunWith(AndroidJUnit4.class)
+public class PanelHeightAnimationTest {
+    private static final int WIDTH = 1080;
+    private static final int HEIGHT = 1920;
+    private static final int PANEL_HEIGHT = 160;
+    private static final int DURATION = 200;
+
+    private SlidingUpPanelLayout mLayout;
+    private View mMainView;
+    private View mPanel;
+
+    private void buildLayout() {
+        final Context context = InstrumentationRegistry.getTargetContext();
+        mLayout = new SlidingUpPanelLayout(context);
+        mLayout.setPanelHeight(PANEL_HEIGHT);
+        mMainView = new View(context);
+        mLayout.addView(mMainView, new SlidingUpPanelLayout.LayoutParams(
+                ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT));
+        mPanel = new FrameLayout(context);
+        mLayout.addView(mPanel, new SlidingUpPanelLayout.LayoutParams(
+                ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT));
+        measureAndLayout();
+    }
+
+    private void measureAndLayout() {
+        mLayout.measure(View.MeasureSpec.makeMeasureSpec(WIDTH, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(HEIGHT, View.MeasureSpec.EXACTLY));
+        mLayout.layout(0, 0, WIDTH, HEIGHT);
+    }
+
+    private void assertMainViewMeetsPanel(int panelHeight) {
+        assertEquals(HEIGHT - panelHeight, mPanel.getTop());
+        assertEquals(HEIGHT - panelHeight, mMainView.getBottom());
+    }
+
+    /**
+     * Animate the panel height to the given value, checking the frame at the middle of the
+     * animation, then commit it with a layout.
+     */
+    private void animateTo(int panelHeight) {
+        mLayout.startPanelHeightAnimation(panelHeight, DURATION, new LinearInterpolator());
+        mLayout.stepPanelHeightAnimation(0.5f);
+        assertMainViewMeetsPanel((PANEL_HEIGHT + panelHeight) / 2);
+        // Neither measured nor laid out during the animation
+        assertEquals(HEIGHT - PANEL_HEIGHT, mMainView.getMeasuredHeight());
+        assertFalse(mLayout.isLayoutRequested());
+
+        mLayout.stepPanelHeightAnimation(1f);
+        assertMainViewMeetsPanel(panelHeight);
+        assertTrue(mLayout.isLayoutRequested());
+
+        measureAndLayout();
+        assertEquals(panelHeight, mLayout.getPanelHeight());
+        assertEquals(HEIGHT - panelHeight, mMainView.getMeasuredHeight());
+        assertMainViewMeetsPanel(panelHeight);
+    }
+
+    @Test
+    public void shrinkingPanelStretchesMainView() {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                buildLayout();
+                animateTo(PANEL_HEIGHT / 2);
+            }
+        });
+    }
+
+    @Test
+    public void growingPanelShrinksMainView() {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                buildLayout();
+                animateTo(PANEL_HEIGHT * 2);
+            }
+        });
+    }
+
+    @Test
+    public void cancelRestoresMainView() {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                buildLayout();
+                mLayout.startPanelHeightAnimation(PANEL_HEIGHT / 2, DURATION, new LinearInterpolator());
+                mLayout.stepPanelHeightAnimation(0.5f);
+                mLayout.setPanelHeight(PANEL_HEIGHT);
+                assertMainViewMeetsPanel(PANEL_HEIGHT);
+            }
+        });
+    }
+}
@@ -0,0 +1,154 @@
+package com.sothree.slidinguppanel;
+
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.FrameLayout;
+import android.widget.HorizontalScrollView;
+import android.widget.LinearLayout;
+import android.widget.TextView;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the cached canScroll answers against a walk of the hierarchy under the touch point, and
+ * compares their cost on a panel of about 500 views. The timings are logged with the tag
+ * ScrollableDescendants.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ScrollableDescendantCacheTest {
+    private static final String TAG = "ScrollableDescendants";
+
+    private static final int WIDTH = 1080;
+    private static final int HEIGHT = 1920;
+    private static final int SECTIONS = 40;
+    private static final int ROWS_PER_SECTION = 10;
+    // Every few sections holds a horizontal carousel
+    private static final int CAROUSEL_INTERVAL = 8;
+    private static final int CAROUSEL_ITEMS = 5;
+    private static final int STEP = 24;
+    private static final int ITERATIONS = 20;
+
+    private FrameLayout mRoot;
+    private int mViewCount;
+
+    private void buildPanel() {
+        final Context context = InstrumentationRegistry.getTargetContext();
+        mRoot = new FrameLayout(context);
+        final LinearLayout panel = new LinearLayout(context);
+        panel.setOrientation(LinearLayout.VERTICAL);
+        mRoot.addView(panel, new FrameLayout.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT,
+                ViewGroup.LayoutParams.WRAP_CONTENT));
+        mViewCount = 2;
+        for (int s = 0; s < SECTIONS; s++) {
+            final LinearLayout section = new LinearLayout(context);
+            section.setOrientation(LinearLayout.VERTICAL);
+            panel.addView(section);
+            mViewCount++;
+            for (int r = 0; r < ROWS_PER_SECTION; r++) {
+                final TextView row = new TextView(context);
+                row.setText("Row " + r);
+                section.addView(row, new LinearLayout.LayoutParams(
+                        ViewGroup.LayoutParams.MATCH_PARENT, 4));
+                mViewCount++;
+            }
+            if (s % CAROUSEL_INTERVAL == 0) {
+                final HorizontalScrollView carousel = new HorizontalScrollView(context);
+                final LinearLayout items = new LinearLayout(context);
+                carousel.addView(items);
+                section.addView(carousel);
+                mViewCount += 2;
+                for (int i = 0; i < CAROUSEL_ITEMS; i++) {
+                    items.addView(new TextView(context), new LinearLayout.LayoutParams(400, 40));
+                    mViewCount++;
+                }
+            }
+        }
+        mRoot.measure(View.MeasureSpec.makeMeasureSpec(WIDTH, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(HEIGHT, View.MeasureSpec.EXACTLY));
+        mRoot.layout(0, 0, WIDTH, HEIGHT);
+    }
+
+    private void assertSameAnswers(ScrollableDescendantCache cache) {
+        for (int y = 0; y < HEIGHT; y += STEP) {
+            for (int x = 0; x < WIDTH; x += STEP) {
+                for (int dx = -1; dx <= 1; dx += 2) {
+                    assertEquals("at " + x + "," + y + " dx " + dx,
+                            ScrollableDescendantCache.canScrollUnder(mRoot, dx, 0, true, x, y),
+                            cache.canScroll(true, dx, 0, true, x, y));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void matchesHierarchyWalk() {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                buildPanel();
+                final ScrollableDescendantCache cache = new ScrollableDescendantCache(mRoot);
+                assertSameAnswers(cache);
+
+                // Scrolling a carousel must not make the cache stale
+                final ViewGroup section = (ViewGroup) ((ViewGroup) mRoot.getChildAt(0)).getChildAt(0);
+                final View carousel = section.getChildAt(section.getChildCount() - 1);
+                carousel.scrollTo(WIDTH / 2, 0);
+                assertSameAnswers(cache);
+            }
+        });
+    }
+
+    @Test
+    public void fasterThanHierarchyWalk() {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                buildPanel();
+                assertTrue(mViewCount >= 500);
+                final ScrollableDescendantCache cache = new ScrollableDescendantCache(mRoot);
+                int hits = 0;
+
+                long start = System.nanoTime();
+                for (int i = 0; i < ITERATIONS; i++) {
+                    for (int y = 0; y < HEIGHT; y += STEP) {
+                        if (ScrollableDescendantCache.canScrollUnder(mRoot, 1, 1, true, WIDTH / 2, y)) {
+                            hits++;
+                        }
+                    }
+                }
+                final long walkNanos = System.nanoTime() - start;
+
+                // A layout rebuilds the cache once, then every move event of the drag queries it
+                start = System.nanoTime();
+                cache.invalidate();
+                cache.canScroll(true, 1, 1, true, WIDTH / 2, 0);
+                final long rebuildNanos = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                for (int i = 0; i < ITERATIONS; i++) {
+                    for (int y = 0; y < HEIGHT; y += STEP) {
+                        if (cache.canScroll(true, 1, 1, true, WIDTH / 2, y)) {
+                            hits--;
+                        }
+                    }
+                }
+                final long cachedNanos = System.nanoTime() - start;
+
+                assertEquals(0, hits);
+                final int queries = ITERATIONS * (HEIGHT / STEP);
+                Log.i(TAG, mViewCount + " views, " + queries + " queries: walk "
+                        + walkNanos / 1000 + "us, cached " + cachedNanos / 1000 + "us, rebuild "
+                        + rebuildNanos / 1000 + "us");
+                assertTrue(cachedNanos < walkNanos);
+            }
+        });
+    }
+}
@@ -0,0 +1,143 @@
+package com.sothree.slidinguppanel;
+
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.view.View;
+import android.view.ViewGroup;
+
+import com.sothree.slidinguppanel.ScrollableViewHelper.RecyclerViewStrategy;
+import com.sothree.slidinguppanel.core.RowHeightIndex;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the RecyclerView strategy backed by a row height index on a list of rows of variable
+ * heights, laid out from the top, from the end, and reversed.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ScrollableViewHelperTest {
+    private static final int WIDTH = 1080;
+    private static final int HEIGHT = 1000;
+    private static final int ITEM_COUNT = 100;
+    // Rows alternate between 50 and 150 pixels
+    private static final int TOTAL_HEIGHT = ITEM_COUNT * 100;
+
+    private static int itemHeight(int position) {
+        return position % 2 == 0 ? 50 : 150;
+    }
+
+    private static class VariableHeightAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
+        @Override
+        public RecyclerView.ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+            return new RecyclerView.ViewHolder(new View(parent.getContext())) {
+            };
+        }
+
+        @Override
+        public void onBindViewHolder(RecyclerView.ViewHolder holder, int position) {
+            holder.itemView.setLayoutParams(new RecyclerView.LayoutParams(
+                    ViewGroup.LayoutParams.MATCH_PARENT, itemHeight(position)));
+        }
+
+        @Override
+        public int getItemCount() {
+            return ITEM_COUNT;
+        }
+    }
+
+    private static RecyclerView buildList(boolean reverseLayout, boolean stackFromEnd) {
+        final Context context = InstrumentationRegistry.getTargetContext();
+        final RecyclerView list = new RecyclerView(context);
+        final LinearLayoutManager layoutManager = new LinearLayoutManager(context);
+        layoutManager.setReverseLayout(reverseLayout);
+        layoutManager.setStackFromEnd(stackFromEnd);
+        list.setLayoutManager(layoutManager);
+        list.setAdapter(new VariableHeightAdapter());
+        measureAndLayout(list);
+        return list;
+    }
+
+    private static void measureAndLayout(RecyclerView list) {
+        list.measure(View.MeasureSpec.makeMeasureSpec(WIDTH, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(HEIGHT, View.MeasureSpec.EXACTLY));
+        list.layout(0, 0, WIDTH, HEIGHT);
+    }
+
+    private static RowHeightIndex exactIndex() {
+        final RowHeightIndex index = new RowHeightIndex(ITEM_COUNT, 0);
+        for (int i = 0; i < ITEM_COUNT; i++) {
+            index.setHeight(i, itemHeight(i));
+        }
+        return index;
+    }
+
+    @Test
+    public void scrolledFromTheTop() {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                final RecyclerViewStrategy strategy = new RecyclerViewStrategy(exactIndex());
+                final RecyclerView list = buildList(false, false);
+                assertEquals(0, strategy.getScrollPosition(list, true));
+                assertEquals(TOTAL_HEIGHT - HEIGHT, strategy.getScrollPosition(list, false));
+
+                // Ten rows of 50 and 150 pixels above the list
+                list.scrollToPosition(10);
+                measureAndLayout(list);
+                assertEquals(1000, strategy.getScrollPosition(list, true));
+                assertEquals(TOTAL_HEIGHT - HEIGHT - 1000, strategy.getScrollPosition(list, false));
+            }
+        });
+    }
+
+    @Test
+    public void stackedFromEnd() {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                final RecyclerViewStrategy strategy = new RecyclerViewStrategy(exactIndex());
+                final RecyclerView list = buildList(false, true);
+                assertEquals(TOTAL_HEIGHT - HEIGHT, strategy.getScrollPosition(list, true));
+                assertEquals(0, strategy.getScrollPosition(list, false));
+            }
+        });
+    }
+
+    @Test
+    public void reversed() {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                final RecyclerViewStrategy strategy = new RecyclerViewStrategy(exactIndex());
+                // The first item is laid out at the bottom, the rest of the list is above it
+                final RecyclerView list = buildList(true, false);
+                assertEquals(TOTAL_HEIGHT - HEIGHT, strategy.getScrollPosition(list, true));
+                assertEquals(0, strategy.getScrollPosition(list, false));
+            }
+        });
+    }
+
+    @Test
+    public void indexFollowsTheLayout() {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                final RowHeightIndex index = new RowHeightIndex(0, 100);
+                final RecyclerViewStrategy strategy = new RecyclerViewStrategy(index);
+                final RecyclerView list = buildList(false, false);
+                // Unknown rows count as 100 pixels, which is the average here
+                assertEquals(TOTAL_HEIGHT - HEIGHT, strategy.getScrollPosition(list, false));
+                assertEquals(ITEM_COUNT, index.getCount());
+                assertEquals(50, index.getHeight(0));
+                assertEquals(150, index.getHeight(1));
+                assertEquals(100, index.getHeight(ITEM_COUNT - 1));
+            }
+        });
+    }
+}
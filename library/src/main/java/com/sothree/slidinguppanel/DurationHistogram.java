@@ -0,0 +1,82 @@
+package com.sothree.slidinguppanel;
+
+/**
+ * Fixed size histogram of durations, with one bucket per millisecond up to a maximum and an
+ * overflow bucket. Recording never allocates.
+ */
+class DurationHistogram {
+    private final int[] mBuckets;
+    private int mCount;
+    private long mMaxNanos;
+
+    /**
+     * @param maxMillis Durations of this many milliseconds and more share the overflow bucket
+     */
+    DurationHistogram(int maxMillis) {
+        mBuckets = new int[maxMillis + 1];
+    }
+
+    void clear() {
+        for (int i = 0; i < mBuckets.length; i++) {
+            mBuckets[i] = 0;
+        }
+        mCount = 0;
+        mMaxNanos = 0;
+    }
+
+    void add(long durationNanos) {
+        if (durationNanos < 0) {
+            return;
+        }
+        final long millis = durationNanos / 1000000;
+        mBuckets[(int) Math.min(millis, mBuckets.length - 1)]++;
+        mCount++;
+        mMaxNanos = Math.max(mMaxNanos, durationNanos);
+    }
+
+    /**
+     * Remove a duration added before, e.g. to keep a rolling window of the last durations.
+     */
+    void remove(long durationNanos) {
+        if (durationNanos < 0 || mCount == 0) {
+            return;
+        }
+        final long millis = durationNanos / 1000000;
+        final int bucket = (int) Math.min(millis, mBuckets.length - 1);
+        if (mBuckets[bucket] > 0) {
+            mBuckets[bucket]--;
+            mCount--;
+        }
+    }
+
+    int getCount() {
+        return mCount;
+    }
+
+    /**
+     * @return The largest duration added since the last clear, in milliseconds
+     */
+    float getMaxMillis() {
+        return mMaxNanos / 1000000f;
+    }
+
+    /**
+     * @param percent A percentile, from 0 to 100
+     * @return The upper bound in milliseconds of the bucket holding the given percentile, or 0 if
+     * the histogram is empty
+     */
+    int getPercentileMillis(float percent) {
+        if (mCount == 0) {
+            return 0;
+        }
+        final int rank = Math.max(1, (int) Math.ceil(mCount * percent / 100f));
+        int seen = 0;
+        for (int i = 0; i < mBuckets.length; i++) {
+            seen += mBuckets[i];
+            if (seen >= rank) {
+                return i + 1;
+            }
+        }
+        return mBuckets.length;
+    }
+}
@@ -0,0 +1,141 @@
+package com.sothree.slidinguppanel;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.os.Build;
+import android.support.v4.view.ViewCompat;
+import android.view.Choreographer;
+import android.view.Display;
+import android.view.View;
+import android.view.WindowManager;
+
+import com.sothree.slidinguppanel.SlidingUpPanelLayout.FrameStatsListener;
+
+/**
+ * Records the frame intervals of a panel gesture, from vsync callbacks of the Choreographer on
+ * API 16 and later, and from animation callbacks of the view before.
+ */
+class FrameStatsCollector {
+    private static final int MAX_FRAME_MILLIS = 250;
+    private static final float DEFAULT_REFRESH_RATE = 60.f;
+
+    private final View mHost;
+    private final DurationHistogram mHistogram = new DurationHistogram(MAX_FRAME_MILLIS);
+    private FrameStatsListener mListener;
+
+    private boolean mRunning;
+    private long mStartNanos;
+    private long mLastFrameNanos;
+    private long mJankThresholdNanos;
+    private float mRefreshIntervalMillis;
+    private int mJankyFrames;
+
+    private Object mFrameCallback;
+
+    private final Runnable mFrameRunnable = new Runnable() {
+        @Override
+        public void run() {
+            onFrame(System.nanoTime());
+        }
+    };
+
+    FrameStatsCollector(View host) {
+        mHost = host;
+    }
+
+    void setListener(FrameStatsListener listener) {
+        mListener = listener;
+        if (listener == null) {
+            cancel();
+        }
+    }
+
+    /**
+     * Start recording a gesture, if a listener is set.
+     */
+    void start() {
+        if (mListener == null || mRunning) {
+            return;
+        }
+        mRunning = true;
+        mHistogram.clear();
+        mJankyFrames = 0;
+        mLastFrameNanos = 0;
+        mStartNanos = System.nanoTime();
+        mRefreshIntervalMillis = 1000.f / getRefreshRate();
+        mJankThresholdNanos = (long) (mRefreshIntervalMillis * 1.5f * 1000000);
+        postFrame();
+    }
+
+    /**
+     * Stop recording and report the gesture to the listener.
+     */
+    void stop() {
+        if (!mRunning) {
+            return;
+        }
+        cancel();
+        final FrameStatsListener listener = mListener;
+        if (listener != null && mHistogram.getCount() > 0) {
+            final long duration = (System.nanoTime() - mStartNanos) / 1000000;
+            listener.onGestureFrameStats(new PanelFrameStats(mHistogram, mJankyFrames,
+                    mRefreshIntervalMillis, duration));
+        }
+    }
+
+    private void cancel() {
+        if (!mRunning) {
+            return;
+        }
+        mRunning = false;
+        if (mFrameCallback != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            Choreographer.getInstance().removeFrameCallback((Choreographer.FrameCallback) mFrameCallback);
+        } else {
+            mHost.removeCallbacks(mFrameRunnable);
+        }
+    }
+
+    private void onFrame(long frameTimeNanos) {
+        if (!mRunning) {
+            return;
+        }
+        if (mLastFrameNanos != 0) {
+            final long interval = frameTimeNanos - mLastFrameNanos;
+            mHistogram.add(interval);
+            if (interval > mJankThresholdNanos) {
+                mJankyFrames++;
+            }
+        }
+        mLastFrameNanos = frameTimeNanos;
+        postFrame();
+    }
+
+    private void postFrame() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            postFrameCallback();
+        } else {
+            ViewCompat.postOnAnimation(mHost, mFrameRunnable);
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private void postFrameCallback() {
+        if (mFrameCallback == null) {
+            mFrameCallback = new Choreographer.FrameCallback() {
+                @Override
+                public void doFrame(long frameTimeNanos) {
+                    onFrame(frameTimeNanos);
+                }
+            };
+        }
+        Choreographer.getInstance().postFrameCallback((Choreographer.FrameCallback) mFrameCallback);
+    }
+
+    private float getRefreshRate() {
+        final WindowManager windowManager =
+                (WindowManager) mHost.getContext().getSystemService(Context.WINDOW_SERVICE);
+        final Display display = windowManager != null ? windowManager.getDefaultDisplay() : null;
+        final float refreshRate = display != null ? display.getRefreshRate() : 0;
+        return refreshRate >= 1 ? refreshRate : DEFAULT_REFRESH_RATE;
+    }
+}
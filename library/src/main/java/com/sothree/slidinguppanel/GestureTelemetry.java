@@ -0,0 +1,263 @@
+package com.sothree.slidinguppanel;
+
+import com.sothree.slidinguppanel.SlidingUpPanelLayout.PanelState;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Records one entry per panel drag of a {@link SlidingUpPanelLayout} and delivers them in batches
+ * to a {@link Sink} on an executor. Set with
+ * {@link SlidingUpPanelLayout#setGestureTelemetrySink(Sink, Executor)}.
+ *
+ * Records are written on the main thread into preallocated primitive arrays used as a ring
+ * buffer, so recording a gesture never allocates. When enough records are pending and no batch is
+ * being delivered, they are copied into the batch and handed to the executor. If the sink falls
+ * behind, the oldest records are overwritten and counted as dropped.
+ */
+public class GestureTelemetry {
+    /**
+     * Receives batches of gesture records.
+     */
+    public interface Sink {
+        /**
+         * Called on the executor with the records of the gestures that ended since the last
+         * batch. The batch is reused once this method returns, so it must not be kept.
+         *
+         * @param batch The records
+         */
+        public void onGestureBatch(Batch batch);
+    }
+
+    static final int CAPACITY = 64;
+    static final int FLUSH_THRESHOLD = 16;
+
+    private static final PanelState[] STATES = PanelState.values();
+
+    private final Sink mSink;
+    private final Executor mExecutor;
+
+    // Ring buffer of records, written on the main thread only
+    private final int[] mStartStates = new int[CAPACITY];
+    private final int[] mEndStates = new int[CAPACITY];
+    private final int[] mTargetStates = new int[CAPACITY];
+    private final int[] mDistances = new int[CAPACITY];
+    private final long[] mDurations = new long[CAPACITY];
+    private final float[] mVelocities = new float[CAPACITY];
+    private final boolean[] mHandoffs = new boolean[CAPACITY];
+    private int mHead;
+    private int mCount;
+    private int mDropped;
+
+    // Gesture in progress
+    private boolean mActive;
+    private int mStartState;
+    private int mStartTop;
+    private long mStartTime;
+    private int mTargetState = -1;
+    private float mVelocity;
+    private boolean mHandoff;
+
+    private final Batch mBatch = new Batch();
+    private volatile boolean mDelivering;
+
+    private final Runnable mDeliverRunnable = new Runnable() {
+        @Override
+        public void run() {
+            try {
+                mSink.onGestureBatch(mBatch);
+            } finally {
+                mDelivering = false;
+            }
+        }
+    };
+
+    GestureTelemetry(Sink sink, Executor executor) {
+        mSink = sink;
+        mExecutor = executor;
+    }
+
+    /**
+     * A touch stream started.
+     */
+    void onTouchDown() {
+        if (!mActive) {
+            mHandoff = false;
+        }
+    }
+
+    /**
+     * The touch stream moved from a scrollable view to the panel, or from the panel to a
+     * scrollable view.
+     */
+    void onScrollableHandoff() {
+        mHandoff = true;
+    }
+
+    void onGestureStart(PanelState state, int panelTop, long uptimeMillis) {
+        if (mActive) {
+            return;
+        }
+        mActive = true;
+        mStartState = state.ordinal();
+        mStartTop = panelTop;
+        mStartTime = uptimeMillis;
+        mTargetState = -1;
+        mVelocity = 0;
+    }
+
+    /**
+     * @param velocity    Release velocity in pixels per second, positive towards expanded
+     * @param targetState The state the panel settles to
+     */
+    void onRelease(float velocity, PanelState targetState) {
+        if (mActive) {
+            mVelocity = velocity;
+            mTargetState = targetState.ordinal();
+        }
+    }
+
+    /**
+     * @param distance Distance travelled in pixels, positive towards expanded
+     */
+    void onGestureEnd(PanelState state, int distance, long uptimeMillis) {
+        if (!mActive) {
+            return;
+        }
+        mActive = false;
+        final int index = (mHead + mCount) % CAPACITY;
+        if (mCount == CAPACITY) {
+            // Overwrite the oldest record
+            mHead = (mHead + 1) % CAPACITY;
+            mDropped++;
+        } else {
+            mCount++;
+        }
+        mStartStates[index] = mStartState;
+        mEndStates[index] = state.ordinal();
+        mTargetStates[index] = mTargetState;
+        mDistances[index] = distance;
+        mDurations[index] = uptimeMillis - mStartTime;
+        mVelocities[index] = mVelocity;
+        mHandoffs[index] = mHandoff;
+        mHandoff = false;
+        if (mCount >= FLUSH_THRESHOLD) {
+            flush();
+        }
+    }
+
+    int getStartTop() {
+        return mStartTop;
+    }
+
+    /**
+     * Deliver the pending records, unless a batch is still being delivered.
+     */
+    void flush() {
+        if (mDelivering || (mCount == 0 && mDropped == 0)) {
+            return;
+        }
+        final Batch batch = mBatch;
+        for (int i = 0; i < mCount; i++) {
+            final int index = (mHead + i) % CAPACITY;
+            batch.mStartStates[i] = mStartStates[index];
+            batch.mEndStates[i] = mEndStates[index];
+            batch.mTargetStates[i] = mTargetStates[index];
+            batch.mDistances[i] = mDistances[index];
+            batch.mDurations[i] = mDurations[index];
+            batch.mVelocities[i] = mVelocities[index];
+            batch.mHandoffs[i] = mHandoffs[index];
+        }
+        batch.mSize = mCount;
+        batch.mDropped = mDropped;
+        mHead = 0;
+        mCount = 0;
+        mDropped = 0;
+        mDelivering = true;
+        mExecutor.execute(mDeliverRunnable);
+    }
+
+    /**
+     * Gesture records delivered to a {@link Sink}, indexed from 0 to {@link #size()} - 1 in the
+     * order the gestures ended.
+     */
+    public static final class Batch {
+        private final int[] mStartStates = new int[CAPACITY];
+        private final int[] mEndStates = new int[CAPACITY];
+        private final int[] mTargetStates = new int[CAPACITY];
+        private final int[] mDistances = new int[CAPACITY];
+        private final long[] mDurations = new long[CAPACITY];
+        private final float[] mVelocities = new float[CAPACITY];
+        private final boolean[] mHandoffs = new boolean[CAPACITY];
+        private int mSize;
+        private int mDropped;
+
+        Batch() {
+        }
+
+        /**
+         * @return The number of records
+         */
+        public int size() {
+            return mSize;
+        }
+
+        /**
+         * @return The number of records overwritten before they could be delivered
+         */
+        public int getDroppedCount() {
+            return mDropped;
+        }
+
+        /**
+         * @return The state of the panel when the gesture started
+         */
+        public PanelState getStartState(int index) {
+            return STATES[mStartStates[index]];
+        }
+
+        /**
+         * @return The state of the panel when the gesture ended
+         */
+        public PanelState getEndState(int index) {
+            return STATES[mEndStates[index]];
+        }
+
+        /**
+         * @return The state chosen when the panel was released, or null if the gesture ended
+         * without a release, e.g. when a scrollable view took over the touch
+         */
+        public PanelState getTargetState(int index) {
+            final int state = mTargetStates[index];
+            return state < 0 ? null : STATES[state];
+        }
+
+        /**
+         * @return The distance travelled by the panel in pixels, positive towards expanded
+         */
+        public int getDistance(int index) {
+            return mDistances[index];
+        }
+
+        /**
+         * @return The duration of the gesture in milliseconds, from the capture of the panel to
+         * the end of the settling
+         */
+        public long getDurationMillis(int index) {
+            return mDurations[index];
+        }
+
+        /**
+         * @return The release velocity in pixels per second, positive towards expanded
+         */
+        public float getReleaseVelocity(int index) {
+            return mVelocities[index];
+        }
+
+        /**
+         * @return true if the touch stream moved between a scrollable view and the panel
+         */
+        public boolean isScrollableHandoff(int index) {
+            return mHandoffs[index];
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.sothree.slidinguppanel;
+
+/**
+ * Helpers for the null-terminated copy-on-write listener arrays. Add and remove return a new
+ * array, so a published array can be iterated without locking. An array always has room for its
+ * terminating null, and never shrinks.
+ *
+ * A slot of a published array may be overwritten with {@link #CLEARED} to drop a dead listener
+ * without allocating. Cleared slots are skipped by readers, and compacted by the next copy.
+ */
+final class ListenerArrays {
+    static final Object[] EMPTY = new Object[1];
+    static final Object CLEARED = new Object();
+
+    private ListenerArrays() {
+    }
+
+    static Object[] add(Object[] items, Object item) {
+        if (item == null) {
+            return items;
+        }
+        final int count = count(items);
+        final Object[] result = new Object[Math.max(count + 2, items.length)];
+        final int copied = copyLive(items, count, result, null);
+        result[copied] = item;
+        return result;
+    }
+
+    static Object[] remove(Object[] items, Object item) {
+        final int count = count(items);
+        for (int i = 0; i < count; i++) {
+            if (items[i].equals(item)) {
+                final Object[] result = new Object[items.length];
+                copyLive(items, count, result, items[i]);
+                return result;
+            }
+        }
+        return items;
+    }
+
+    /**
+     * Copy the items that are neither cleared nor the skipped one.
+     *
+     * @return The number of items copied
+     */
+    private static int copyLive(Object[] items, int count, Object[] result, Object skipped) {
+        int copied = 0;
+        for (int i = 0; i < count; i++) {
+            if (items[i] != CLEARED && items[i] != skipped) {
+                result[copied++] = items[i];
+            }
+        }
+        return copied;
+    }
+
+    static int count(Object[] items) {
+        int count = 0;
+        while (count < items.length && items[count] != null) {
+            count++;
+        }
+        return count;
+    }
+}
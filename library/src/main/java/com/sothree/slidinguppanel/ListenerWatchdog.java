@@ -0,0 +1,208 @@
+package com.sothree.slidinguppanel;
+
+import android.util.Log;
+import android.view.View;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Debug helper timing the listener callbacks of a {@link SlidingUpPanelLayout} on the main
+ * thread. Set with {@link SlidingUpPanelLayout#setListenerWatchdog(ListenerWatchdog)}, e.g. only
+ * when BuildConfig.DEBUG is true.
+ *
+ * A callback is reported when it takes longer than the budget, or when a slide callback requests
+ * a layout, which forces a layout pass on every frame of the drag. Statistics are aggregated per
+ * listener class. Reports are logged unless a {@link Reporter} is set. The watchdog never throws:
+ * an exception thrown by the reporter is logged and dropped.
+ */
+public class ListenerWatchdog {
+    private static final String TAG = "ListenerWatchdog";
+
+    /**
+     * Receives the listener callbacks that went over budget or requested a layout.
+     */
+    public interface Reporter {
+        /**
+         * Called on the main thread right after the offending callback returned.
+         *
+         * @param stats           The statistics of the listener class, including this callback
+         * @param durationNanos   The duration of the callback
+         * @param requestedLayout true if the callback requested a layout during a slide
+         */
+        public void onListenerViolation(ListenerStats stats, long durationNanos, boolean requestedLayout);
+    }
+
+    private final long mBudgetNanos;
+    private final Reporter mReporter;
+    private final HashMap<Class<?>, ListenerStats> mStats = new HashMap<>();
+
+    // Depth of nested callbacks, e.g. a listener changing the panel state from its callback
+    private int mDepth;
+    private boolean mSlideCallback;
+    private boolean mLayoutRequested;
+    private boolean mRootLayoutRequested;
+
+    /**
+     * @param budgetMillis The time a single callback may take out of a frame
+     */
+    public ListenerWatchdog(float budgetMillis) {
+        this(budgetMillis, null);
+    }
+
+    /**
+     * @param budgetMillis The time a single callback may take out of a frame
+     * @param reporter     The reporter, or null to log the violations
+     */
+    public ListenerWatchdog(float budgetMillis, Reporter reporter) {
+        if (budgetMillis <= 0) {
+            throw new IllegalArgumentException("Budget must be positive");
+        }
+        mBudgetNanos = (long) (budgetMillis * 1000000);
+        mReporter = reporter;
+    }
+
+    /**
+     * @return The time a single callback may take, in milliseconds
+     */
+    public float getBudgetMillis() {
+        return mBudgetNanos / 1000000f;
+    }
+
+    /**
+     * @return The statistics of every listener class called since the last {@link #reset()}.
+     * Must be called on the main thread.
+     */
+    public List<ListenerStats> getStats() {
+        return new ArrayList<>(mStats.values());
+    }
+
+    /**
+     * Forget the statistics. Must be called on the main thread.
+     */
+    public void reset() {
+        mStats.clear();
+    }
+
+    /**
+     * @param slide true if the callback is a slide callback
+     * @return The start time of the callback, to pass to {@link #endCallback}
+     */
+    long beginCallback(View host, boolean slide) {
+        if (mDepth++ == 0) {
+            mSlideCallback = slide;
+            mLayoutRequested = false;
+            // A request of any view of the window reaches the root, unless it already has one
+            mRootLayoutRequested = slide && host.getRootView().isLayoutRequested();
+        }
+        return System.nanoTime();
+    }
+
+    void endCallback(View host, Object listener, long startNanos) {
+        final long duration = System.nanoTime() - startNanos;
+        if (--mDepth > 0) {
+            return;
+        }
+        final boolean requestedLayout = mSlideCallback
+                && (mLayoutRequested || (!mRootLayoutRequested && host.getRootView().isLayoutRequested()));
+        final Class<?> listenerClass = listener.getClass();
+        ListenerStats stats = mStats.get(listenerClass);
+        if (stats == null) {
+            stats = new ListenerStats(listenerClass);
+            mStats.put(listenerClass, stats);
+        }
+        stats.mCallCount++;
+        stats.mTotalNanos += duration;
+        stats.mMaxNanos = Math.max(stats.mMaxNanos, duration);
+        final boolean overBudget = duration > mBudgetNanos;
+        if (overBudget) {
+            stats.mOverBudgetCount++;
+        }
+        if (requestedLayout) {
+            stats.mLayoutRequestCount++;
+        }
+        if (overBudget || requestedLayout) {
+            report(stats, duration, requestedLayout);
+        }
+    }
+
+    /**
+     * The host layout was asked for a layout.
+     */
+    void onLayoutRequested() {
+        if (mDepth > 0) {
+            mLayoutRequested = true;
+        }
+    }
+
+    private void report(ListenerStats stats, long duration, boolean requestedLayout) {
+        try {
+            if (mReporter != null) {
+                mReporter.onListenerViolation(stats, duration, requestedLayout);
+            } else {
+                Log.w(TAG, (requestedLayout ? "Layout requested from a slide callback, "
+                        : "Callback over budget, ") + duration / 1000000f + "ms: " + stats);
+            }
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Reporter failed", e);
+        }
+    }
+
+    /**
+     * Statistics of the callbacks of one listener class.
+     */
+    public static final class ListenerStats {
+        private final Class<?> mListenerClass;
+        private int mCallCount;
+        private int mOverBudgetCount;
+        private int mLayoutRequestCount;
+        private long mTotalNanos;
+        private long mMaxNanos;
+
+        ListenerStats(Class<?> listenerClass) {
+            mListenerClass = listenerClass;
+        }
+
+        public Class<?> getListenerClass() {
+            return mListenerClass;
+        }
+
+        public int getCallCount() {
+            return mCallCount;
+        }
+
+        /**
+         * @return The number of callbacks longer than the budget
+         */
+        public int getOverBudgetCount() {
+            return mOverBudgetCount;
+        }
+
+        /**
+         * @return The number of slide callbacks that requested a layout
+         */
+        public int getLayoutRequestCount() {
+            return mLayoutRequestCount;
+        }
+
+        public float getTotalMillis() {
+            return mTotalNanos / 1000000f;
+        }
+
+        public float getMaxMillis() {
+            return mMaxNanos / 1000000f;
+        }
+
+        public float getAverageMillis() {
+            return mCallCount == 0 ? 0 : mTotalNanos / 1000000f / mCallCount;
+        }
+
+        @Override
+        public String toString() {
+            return "ListenerStats{" + mListenerClass.getName() + ", calls=" + mCallCount
+                    + ", overBudget=" + mOverBudgetCount + ", layoutRequests=" + mLayoutRequestCount
+                    + ", avg=" + getAverageMillis() + "ms, max=" + getMaxMillis() + "ms}";
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.sothree.slidinguppanel;
+
+import android.support.v4.view.ViewCompat;
+import android.view.View;
+import android.view.animation.Interpolator;
+
+import java.util.ArrayList;
+
+/**
+ * A set of view properties driven by the slide offset of a {@link SlidingUpPanelLayout}, e.g.
+ * fading a header out while the panel expands. Set with
+ * {@link SlidingUpPanelLayout#setOffsetBindings(OffsetBindings)}.
+ *
+ * Each binding maps a range of slide offsets to a range of values of one property of one view.
+ * Outside of its offset range a binding holds the value at the closest end. The bindings are
+ * stored in flat arrays and evaluated in one pass whenever the slide offset changes; a property
+ * is only set when its value changed.
+ */
+public class OffsetBindings {
+    public static final int ALPHA = 0;
+    public static final int TRANSLATION_X = 1;
+    public static final int TRANSLATION_Y = 2;
+    public static final int SCALE_X = 3;
+    public static final int SCALE_Y = 4;
+    public static final int ROTATION = 5;
+
+    private final int mCount;
+    private final View[] mViews;
+    private final int[] mProperties;
+    // fromOffset, 1 / (toOffset - fromOffset), fromValue, toValue for each binding
+    private final float[] mParams;
+    private final Interpolator[] mInterpolators;
+    private final float[] mLastValues;
+
+    private OffsetBindings(Builder builder) {
+        mCount = builder.mViews.size();
+        mViews = builder.mViews.toArray(new View[mCount]);
+        mInterpolators = builder.mInterpolators.toArray(new Interpolator[mCount]);
+        mProperties = new int[mCount];
+        mParams = new float[mCount * 4];
+        for (int i = 0; i < mCount; i++) {
+            mProperties[i] = builder.mProperties.get(i);
+            System.arraycopy(builder.mParams, i * 4, mParams, i * 4, 4);
+        }
+        mLastValues = new float[mCount];
+        reset();
+    }
+
+    /**
+     * @return The number of bindings
+     */
+    public int size() {
+        return mCount;
+    }
+
+    /**
+     * Forget the values last set, so that the next evaluation sets every property.
+     */
+    void reset() {
+        for (int i = 0; i < mCount; i++) {
+            mLastValues[i] = Float.NaN;
+        }
+    }
+
+    /**
+     * Evaluate every binding for the given slide offset.
+     */
+    void apply(float slideOffset) {
+        final float[] params = mParams;
+        for (int i = 0; i < mCount; i++) {
+            final int p = i * 4;
+            float fraction = (slideOffset - params[p]) * params[p + 1];
+            if (fraction < 0) {
+                fraction = 0;
+            } else if (fraction > 1) {
+                fraction = 1;
+            }
+            final Interpolator interpolator = mInterpolators[i];
+            if (interpolator != null) {
+                fraction = interpolator.getInterpolation(fraction);
+            }
+            final float value = params[p + 2] + (params[p + 3] - params[p + 2]) * fraction;
+            if (value == mLastValues[i]) {
+                continue;
+            }
+            mLastValues[i] = value;
+            setProperty(mViews[i], mProperties[i], value);
+        }
+    }
+
+    private static void setProperty(View view, int property, float value) {
+        switch (property) {
+            case ALPHA:
+                ViewCompat.setAlpha(view, value);
+                break;
+            case TRANSLATION_X:
+                ViewCompat.setTranslationX(view, value);
+                break;
+            case TRANSLATION_Y:
+                ViewCompat.setTranslationY(view, value);
+                break;
+            case SCALE_X:
+                ViewCompat.setScaleX(view, value);
+                break;
+            case SCALE_Y:
+                ViewCompat.setScaleY(view, value);
+                break;
+            case ROTATION:
+                ViewCompat.setRotation(view, value);
+                break;
+        }
+    }
+
+    /**
+     * Builder for {@link OffsetBindings}.
+     */
+    public static class Builder {
+        private final ArrayList<View> mViews = new ArrayList<>();
+        private final ArrayList<Integer> mProperties = new ArrayList<>();
+        private final ArrayList<Interpolator> mInterpolators = new ArrayList<>();
+        private float[] mParams = new float[16];
+
+        /**
+         * Bind a property of a view linearly to the whole slide range.
+         *
+         * @param view      The view to animate
+         * @param property  One of {@link #ALPHA}, {@link #TRANSLATION_X}, {@link #TRANSLATION_Y},
+         *                  {@link #SCALE_X}, {@link #SCALE_Y} or {@link #ROTATION}
+         * @param fromValue The value of the property when collapsed
+         * @param toValue   The value of the property when expanded
+         */
+        public Builder bind(View view, int property, float fromValue, float toValue) {
+            return bind(view, property, 0.f, 1.f, fromValue, toValue, null);
+        }
+
+        /**
+         * Bind a property of a view to a range of slide offsets.
+         *
+         * @param view         The view to animate
+         * @param property     One of {@link #ALPHA}, {@link #TRANSLATION_X},
+         *                     {@link #TRANSLATION_Y}, {@link #SCALE_X}, {@link #SCALE_Y} or
+         *                     {@link #ROTATION}
+         * @param fromOffset   The slide offset where the animation starts
+         * @param toOffset     The slide offset where the animation ends
+         * @param fromValue    The value of the property at fromOffset and below
+         * @param toValue      The value of the property at toOffset and above
+         * @param interpolator The interpolator of the animation, or null for a linear one
+         */
+        public Builder bind(View view, int property, float fromOffset, float toOffset,
+                            float fromValue, float toValue, Interpolator interpolator) {
+            if (view == null) {
+                throw new IllegalArgumentException("View cannot be null");
+            }
+            if (property < ALPHA || property > ROTATION) {
+                throw new IllegalArgumentException("Unknown property " + property);
+            }
+            if (fromOffset >= toOffset) {
+                throw new IllegalArgumentException("fromOffset must be smaller than toOffset");
+            }
+            final int index = mViews.size();
+            if ((index + 1) * 4 > mParams.length) {
+                final float[] params = new float[mParams.length * 2];
+                System.arraycopy(mParams, 0, params, 0, mParams.length);
+                mParams = params;
+            }
+            mViews.add(view);
+            mProperties.add(property);
+            mInterpolators.add(interpolator);
+            mParams[index * 4] = fromOffset;
+            mParams[index * 4 + 1] = 1.f / (toOffset - fromOffset);
+            mParams[index * 4 + 2] = fromValue;
+            mParams[index * 4 + 3] = toValue;
+            return this;
+        }
+
+        public OffsetBindings build() {
+            return new OffsetBindings(this);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.sothree.slidinguppanel;
+
+/**
+ * Frame statistics of one panel gesture, from the start of a drag to the end of the settling,
+ * reported to a {@link SlidingUpPanelLayout.FrameStatsListener}.
+ */
+public class PanelFrameStats {
+    private final int mTotalFrames;
+    private final int mJankyFrames;
+    private final float mRefreshIntervalMillis;
+    private final long mDurationMillis;
+    private final float mMaxFrameMillis;
+    private final int mPercentile50;
+    private final int mPercentile90;
+    private final int mPercentile95;
+    private final int mPercentile99;
+
+    PanelFrameStats(DurationHistogram histogram, int jankyFrames, float refreshIntervalMillis,
+                    long durationMillis) {
+        mTotalFrames = histogram.getCount();
+        mJankyFrames = jankyFrames;
+        mRefreshIntervalMillis = refreshIntervalMillis;
+        mDurationMillis = durationMillis;
+        mMaxFrameMillis = histogram.getMaxMillis();
+        mPercentile50 = histogram.getPercentileMillis(50);
+        mPercentile90 = histogram.getPercentileMillis(90);
+        mPercentile95 = histogram.getPercentileMillis(95);
+        mPercentile99 = histogram.getPercentileMillis(99);
+    }
+
+    /**
+     * @return The number of frames of the gesture
+     */
+    public int getTotalFrames() {
+        return mTotalFrames;
+    }
+
+    /**
+     * @return The number of frames that took longer than one and a half refresh intervals, i.e.
+     * that missed at least one vsync
+     */
+    public int getJankyFrames() {
+        return mJankyFrames;
+    }
+
+    /**
+     * @return The refresh interval of the display, in milliseconds
+     */
+    public float getRefreshIntervalMillis() {
+        return mRefreshIntervalMillis;
+    }
+
+    /**
+     * @return The duration of the gesture, in milliseconds
+     */
+    public long getDurationMillis() {
+        return mDurationMillis;
+    }
+
+    /**
+     * @return The longest frame of the gesture, in milliseconds
+     */
+    public float getMaxFrameMillis() {
+        return mMaxFrameMillis;
+    }
+
+    /**
+     * @return The median frame time, in milliseconds, rounded up
+     */
+    public int getPercentile50() {
+        return mPercentile50;
+    }
+
+    /**
+     * @return The 90th percentile frame time, in milliseconds, rounded up
+     */
+    public int getPercentile90() {
+        return mPercentile90;
+    }
+
+    /**
+     * @return The 95th percentile frame time, in milliseconds, rounded up
+     */
+    public int getPercentile95() {
+        return mPercentile95;
+    }
+
+    /**
+     * @return The 99th percentile frame time, in milliseconds, rounded up
+     */
+    public int getPercentile99() {
+        return mPercentile99;
+    }
+
+    @Override
+    public String toString() {
+        return "PanelFrameStats{frames=" + mTotalFrames + ", janky=" + mJankyFrames
+                + ", p50=" + mPercentile50 + "ms, p90=" + mPercentile90 + "ms, p95=" + mPercentile95
+                + "ms, p99=" + mPercentile99 + "ms, max=" + mMaxFrameMillis + "ms}";
+    }
+}
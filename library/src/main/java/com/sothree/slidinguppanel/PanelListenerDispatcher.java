@@ -0,0 +1,538 @@
+package com.sothree.slidinguppanel;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.support.v4.util.Pools;
+import android.support.v4.view.ViewCompat;
+import android.view.View;
+
+import com.sothree.slidinguppanel.SlidingUpPanelLayout.DeliveryMode;
+import com.sothree.slidinguppanel.SlidingUpPanelLayout.PanelEvent;
+import com.sothree.slidinguppanel.SlidingUpPanelLayout.PanelEventListener;
+import com.sothree.slidinguppanel.SlidingUpPanelLayout.PanelSlideListener;
+import com.sothree.slidinguppanel.SlidingUpPanelLayout.PanelSlideOffsetListener;
+import com.sothree.slidinguppanel.SlidingUpPanelLayout.PanelState;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.Executor;
+
+/**
+ * Dispatches the panel events to the registered listeners.
+ *
+ * The listeners are kept in copy-on-write arrays: registration copies the array under a lock,
+ * while dispatching reads the current snapshot without locking or allocating, so a listener may
+ * add or remove listeners from its callback. Arrays are null-terminated, and only grow.
+ *
+ * Listeners that are not called immediately are never called from the dispatch itself. Their
+ * events are collected, slide events being conflated to the latest position, and delivered on
+ * the next animation frame, when the main thread is idle, or on an executor.
+ *
+ * Slide listeners may also be held weakly, or until a view is detached from its window. Such
+ * listeners are cleared from the array in place the first time a dispatch finds them dead, and
+ * the array is compacted by the next registration change.
+ */
+class PanelListenerDispatcher {
+    private static final int EVENT_POOL_SIZE = 16;
+
+    /**
+     * A listener that is not called immediately.
+     */
+    private static final class Registration {
+        final Object listener;
+        final DeliveryMode mode;
+        final Executor executor;
+
+        Registration(Object listener, DeliveryMode mode, Executor executor) {
+            this.listener = listener;
+            this.mode = mode;
+            this.executor = executor;
+        }
+    }
+
+    /**
+     * A slide listener held weakly, or strongly until its scope view is detached.
+     */
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB_MR1)
+    private static final class ListenerRef implements View.OnAttachStateChangeListener {
+        private final WeakReference<PanelSlideListener> mWeakListener;
+        private final PanelSlideListener mListener;
+        private final View mScope;
+        private volatile boolean mDead;
+
+        ListenerRef(PanelSlideListener listener, View scope) {
+            mWeakListener = scope == null ? new WeakReference<>(listener) : null;
+            mListener = scope != null ? listener : null;
+            mScope = scope;
+        }
+
+        PanelSlideListener get() {
+            if (mDead) {
+                return null;
+            }
+            return mListener != null ? mListener : mWeakListener.get();
+        }
+
+        void kill() {
+            mDead = true;
+            if (mScope != null) {
+                mScope.removeOnAttachStateChangeListener(this);
+            }
+        }
+
+        @Override
+        public void onViewAttachedToWindow(View v) {
+        }
+
+        @Override
+        public void onViewDetachedFromWindow(View v) {
+            kill();
+        }
+    }
+
+    /**
+     * Events waiting for delivery: the latest slide and every state change, in order.
+     */
+    private static final class PendingEvents {
+        boolean slide;
+        View slidePanel;
+        int panelTop;
+        float slideOffset;
+
+        View[] statePanels = new View[4];
+        PanelState[] previousStates = new PanelState[4];
+        PanelState[] newStates = new PanelState[4];
+        int stateCount;
+
+        void setSlide(View panel, int top, float offset) {
+            slide = true;
+            slidePanel = panel;
+            panelTop = top;
+            slideOffset = offset;
+        }
+
+        void addStateChange(View panel, PanelState previousState, PanelState newState) {
+            if (stateCount == newStates.length) {
+                final int capacity = stateCount * 2;
+                View[] panels = new View[capacity];
+                PanelState[] previous = new PanelState[capacity];
+                PanelState[] next = new PanelState[capacity];
+                System.arraycopy(statePanels, 0, panels, 0, stateCount);
+                System.arraycopy(previousStates, 0, previous, 0, stateCount);
+                System.arraycopy(newStates, 0, next, 0, stateCount);
+                statePanels = panels;
+                previousStates = previous;
+                newStates = next;
+            }
+            statePanels[stateCount] = panel;
+            previousStates[stateCount] = previousState;
+            newStates[stateCount] = newState;
+            stateCount++;
+        }
+
+        void clear() {
+            slide = false;
+            slidePanel = null;
+            for (int i = 0; i < stateCount; i++) {
+                statePanels[i] = null;
+                previousStates[i] = null;
+                newStates[i] = null;
+            }
+            stateCount = 0;
+        }
+    }
+
+    /**
+     * Delivers one event to an executor listener, then returns itself and its event to the pool.
+     */
+    private final class EventDelivery implements Runnable {
+        final PanelEvent event = new PanelEvent();
+        PanelEventListener listener;
+
+        @Override
+        public void run() {
+            try {
+                listener.onPanelEvent(event);
+            } finally {
+                listener = null;
+                event.clear();
+                mDeliveryPool.release(this);
+            }
+        }
+    }
+
+    private final View mHost;
+    private final Object mLock = new Object();
+    private volatile Object[] mSlideListeners = ListenerArrays.EMPTY;
+    private volatile Object[] mOffsetListeners = ListenerArrays.EMPTY;
+    private volatile Object[] mDeferredListeners = ListenerArrays.EMPTY;
+    private volatile boolean mHasFrameListeners;
+    private volatile boolean mHasIdleListeners;
+    private ListenerWatchdog mWatchdog;
+
+    // Panel top of the last slide event, slide events for the same pixel position are dropped
+    private int mLastSlideTop = Integer.MIN_VALUE;
+
+    private final PendingEvents mFramePending = new PendingEvents();
+    private final PendingEvents mIdlePending = new PendingEvents();
+    private boolean mFrameScheduled;
+    private boolean mIdleScheduled;
+
+    private final Pools.Pool<EventDelivery> mDeliveryPool = new Pools.SynchronizedPool<>(EVENT_POOL_SIZE);
+
+    private final Runnable mFrameRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mFrameScheduled = false;
+            flush(mFramePending, false);
+        }
+    };
+
+    private final MessageQueue.IdleHandler mIdleHandler = new MessageQueue.IdleHandler() {
+        @Override
+        public boolean queueIdle() {
+            mIdleScheduled = false;
+            flush(mIdlePending, true);
+            return false;
+        }
+    };
+
+    PanelListenerDispatcher(View host) {
+        mHost = host;
+    }
+
+    /**
+     * Time the callbacks made on the main thread with the given watchdog, or stop if null.
+     */
+    void setWatchdog(ListenerWatchdog watchdog) {
+        mWatchdog = watchdog;
+    }
+
+    void addSlideListener(PanelSlideListener listener) {
+        synchronized (mLock) {
+            mSlideListeners = ListenerArrays.add(mSlideListeners, listener);
+        }
+    }
+
+    void addSlideListener(PanelSlideListener listener, DeliveryMode mode) {
+        if (mode == DeliveryMode.IMMEDIATE) {
+            addSlideListener(listener);
+        } else if (listener != null) {
+            addDeferred(new Registration(listener, mode, null));
+        }
+    }
+
+    /**
+     * Add a slide listener held weakly, or until the scope view is detached from its window.
+     *
+     * @param scope The view bounding the registration, or null to hold the listener weakly
+     */
+    void addScopedSlideListener(PanelSlideListener listener, View scope) {
+        if (listener == null) {
+            return;
+        }
+        if (scope != null && Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB_MR1) {
+            // Attach state changes are not reported, fall back to a weak registration
+            scope = null;
+        }
+        final ListenerRef ref = new ListenerRef(listener, scope);
+        if (scope != null) {
+            scope.addOnAttachStateChangeListener(ref);
+        }
+        synchronized (mLock) {
+            mSlideListeners = ListenerArrays.add(mSlideListeners, ref);
+        }
+    }
+
+    void removeSlideListener(PanelSlideListener listener) {
+        synchronized (mLock) {
+            final Object[] slideListeners = mSlideListeners;
+            for (int i = 0; i < slideListeners.length && slideListeners[i] != null; i++) {
+                final Object item = slideListeners[i];
+                if (item instanceof ListenerRef && ((ListenerRef) item).get() == listener) {
+                    ((ListenerRef) item).kill();
+                    mSlideListeners = ListenerArrays.remove(slideListeners, item);
+                    break;
+                }
+            }
+            mSlideListeners = ListenerArrays.remove(mSlideListeners, listener);
+            removeDeferred(listener);
+        }
+    }
+
+    /**
+     * @return The number of registered listeners that are still alive
+     */
+    int getLiveListenerCount() {
+        int count = ListenerArrays.count(mOffsetListeners) + ListenerArrays.count(mDeferredListeners);
+        final Object[] slideListeners = mSlideListeners;
+        for (int i = 0; i < slideListeners.length && slideListeners[i] != null; i++) {
+            if (resolve(slideListeners[i]) != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    void addOffsetListener(PanelSlideOffsetListener listener) {
+        synchronized (mLock) {
+            mOffsetListeners = ListenerArrays.add(mOffsetListeners, listener);
+        }
+    }
+
+    void removeOffsetListener(PanelSlideOffsetListener listener) {
+        synchronized (mLock) {
+            mOffsetListeners = ListenerArrays.remove(mOffsetListeners, listener);
+        }
+    }
+
+    void addEventListener(PanelEventListener listener, Executor executor) {
+        if (listener != null) {
+            addDeferred(new Registration(listener, DeliveryMode.FRAME, executor));
+        }
+    }
+
+    void removeEventListener(PanelEventListener listener) {
+        synchronized (mLock) {
+            removeDeferred(listener);
+        }
+    }
+
+    /**
+     * Forget the position of the last slide event, so that the next one is dispatched. Called
+     * when the geometry of the panel changed and the same top maps to another slide offset.
+     */
+    void resetSlidePosition() {
+        mLastSlideTop = Integer.MIN_VALUE;
+    }
+
+    /**
+     * Dispatch a slide event, unless the panel is still at the position of the last one.
+     */
+    void dispatchSlide(View panel, int panelTop, float slideOffset) {
+        if (panelTop == mLastSlideTop) {
+            return;
+        }
+        mLastSlideTop = panelTop;
+
+        final ListenerWatchdog watchdog = mWatchdog;
+        final Object[] offsetListeners = mOffsetListeners;
+        for (int i = 0; i < offsetListeners.length && offsetListeners[i] != null; i++) {
+            final long start = watchdog == null ? 0 : watchdog.beginCallback(mHost, true);
+            try {
+                ((PanelSlideOffsetListener) offsetListeners[i]).onPanelSlide(panelTop, slideOffset);
+            } finally {
+                if (watchdog != null) {
+                    watchdog.endCallback(mHost, offsetListeners[i], start);
+                }
+            }
+        }
+        final Object[] slideListeners = mSlideListeners;
+        boolean prune = false;
+        for (int i = 0; i < slideListeners.length && slideListeners[i] != null; i++) {
+            final PanelSlideListener listener = resolve(slideListeners[i]);
+            if (listener == null) {
+                if (slideListeners[i] != ListenerArrays.CLEARED) {
+                    prune = true;
+                }
+                continue;
+            }
+            final long start = watchdog == null ? 0 : watchdog.beginCallback(mHost, true);
+            try {
+                listener.onPanelSlide(panel, slideOffset);
+            } finally {
+                if (watchdog != null) {
+                    watchdog.endCallback(mHost, listener, start);
+                }
+            }
+        }
+        if (prune) {
+            pruneSlideListeners();
+        }
+
+        if (mHasFrameListeners) {
+            mFramePending.setSlide(panel, panelTop, slideOffset);
+            scheduleFrame();
+        }
+        if (mHasIdleListeners) {
+            mIdlePending.setSlide(panel, panelTop, slideOffset);
+            scheduleIdle();
+        }
+    }
+
+    void dispatchStateChanged(View panel, PanelState previousState, PanelState newState) {
+        final ListenerWatchdog watchdog = mWatchdog;
+        final Object[] slideListeners = mSlideListeners;
+        boolean prune = false;
+        for (int i = 0; i < slideListeners.length && slideListeners[i] != null; i++) {
+            final PanelSlideListener listener = resolve(slideListeners[i]);
+            if (listener == null) {
+                if (slideListeners[i] != ListenerArrays.CLEARED) {
+                    prune = true;
+                }
+                continue;
+            }
+            final long start = watchdog == null ? 0 : watchdog.beginCallback(mHost, false);
+            try {
+                listener.onPanelStateChanged(panel, previousState, newState);
+            } finally {
+                if (watchdog != null) {
+                    watchdog.endCallback(mHost, listener, start);
+                }
+            }
+        }
+        if (prune) {
+            pruneSlideListeners();
+        }
+
+        if (mHasFrameListeners) {
+            mFramePending.addStateChange(panel, previousState, newState);
+            scheduleFrame();
+        }
+        if (mHasIdleListeners) {
+            mIdlePending.addStateChange(panel, previousState, newState);
+            scheduleIdle();
+        }
+    }
+
+    private static PanelSlideListener resolve(Object item) {
+        if (item == ListenerArrays.CLEARED) {
+            return null;
+        }
+        return item instanceof ListenerRef ? ((ListenerRef) item).get() : (PanelSlideListener) item;
+    }
+
+    /**
+     * Drop the dead listeners by clearing their slots in place, without allocating. A reader
+     * iterating the published array, e.g. a nested dispatch, sees either the dead listener or the
+     * cleared slot, and skips both. The slots are compacted by the next add or remove.
+     */
+    private void pruneSlideListeners() {
+        synchronized (mLock) {
+            final Object[] slideListeners = mSlideListeners;
+            for (int i = 0; i < slideListeners.length && slideListeners[i] != null; i++) {
+                if (resolve(slideListeners[i]) == null) {
+                    slideListeners[i] = ListenerArrays.CLEARED;
+                }
+            }
+        }
+    }
+
+    private void scheduleFrame() {
+        if (!mFrameScheduled) {
+            mFrameScheduled = true;
+            ViewCompat.postOnAnimation(mHost, mFrameRunnable);
+        }
+    }
+
+    private void scheduleIdle() {
+        if (!mIdleScheduled) {
+            mIdleScheduled = true;
+            Looper.myQueue().addIdleHandler(mIdleHandler);
+        }
+    }
+
+    /**
+     * Deliver the pending events to the deferred listeners of one kind: state changes first, in
+     * order, then the latest slide.
+     */
+    private void flush(PendingEvents pending, boolean idle) {
+        final Object[] deferred = mDeferredListeners;
+        for (int i = 0; i < deferred.length && deferred[i] != null; i++) {
+            final Registration registration = (Registration) deferred[i];
+            if ((registration.mode == DeliveryMode.IDLE) != idle) {
+                continue;
+            }
+            for (int k = 0; k < pending.stateCount; k++) {
+                deliverStateChange(registration, pending.statePanels[k],
+                        pending.previousStates[k], pending.newStates[k]);
+            }
+            if (pending.slide) {
+                deliverSlide(registration, pending.slidePanel, pending.panelTop, pending.slideOffset);
+            }
+        }
+        pending.clear();
+    }
+
+    private void deliverSlide(Registration registration, View panel, int panelTop, float slideOffset) {
+        if (registration.executor == null) {
+            final ListenerWatchdog watchdog = mWatchdog;
+            final long start = watchdog == null ? 0 : watchdog.beginCallback(mHost, true);
+            try {
+                ((PanelSlideListener) registration.listener).onPanelSlide(panel, slideOffset);
+            } finally {
+                if (watchdog != null) {
+                    watchdog.endCallback(mHost, registration.listener, start);
+                }
+            }
+            return;
+        }
+        final EventDelivery delivery = obtainDelivery(registration);
+        delivery.event.setSlide(panelTop, slideOffset);
+        registration.executor.execute(delivery);
+    }
+
+    private void deliverStateChange(Registration registration, View panel,
+                                    PanelState previousState, PanelState newState) {
+        if (registration.executor == null) {
+            final ListenerWatchdog watchdog = mWatchdog;
+            final long start = watchdog == null ? 0 : watchdog.beginCallback(mHost, false);
+            try {
+                ((PanelSlideListener) registration.listener).onPanelStateChanged(panel, previousState, newState);
+            } finally {
+                if (watchdog != null) {
+                    watchdog.endCallback(mHost, registration.listener, start);
+                }
+            }
+            return;
+        }
+        final EventDelivery delivery = obtainDelivery(registration);
+        delivery.event.setStateChange(previousState, newState);
+        registration.executor.execute(delivery);
+    }
+
+    private EventDelivery obtainDelivery(Registration registration) {
+        EventDelivery delivery = mDeliveryPool.acquire();
+        if (delivery == null) {
+            delivery = new EventDelivery();
+        }
+        delivery.listener = (PanelEventListener) registration.listener;
+        return delivery;
+    }
+
+    private void addDeferred(Registration registration) {
+        synchronized (mLock) {
+            mDeferredListeners = ListenerArrays.add(mDeferredListeners, registration);
+            updateDeferredModes();
+        }
+    }
+
+    // Must hold mLock
+    private void removeDeferred(Object listener) {
+        final Object[] deferred = mDeferredListeners;
+        for (int i = 0; i < deferred.length && deferred[i] != null; i++) {
+            if (((Registration) deferred[i]).listener.equals(listener)) {
+                mDeferredListeners = ListenerArrays.remove(deferred, deferred[i]);
+                updateDeferredModes();
+                return;
+            }
+        }
+    }
+
+    // Must hold mLock
+    private void updateDeferredModes() {
+        boolean frame = false;
+        boolean idle = false;
+        final Object[] deferred = mDeferredListeners;
+        for (int i = 0; i < deferred.length && deferred[i] != null; i++) {
+            if (((Registration) deferred[i]).mode == DeliveryMode.IDLE) {
+                idle = true;
+            } else {
+                frame = true;
+            }
+        }
+        mHasFrameListeners = frame;
+        mHasIdleListeners = idle;
+    }
+}
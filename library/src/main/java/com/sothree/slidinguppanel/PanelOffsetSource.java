@@ -0,0 +1,161 @@
+package com.sothree.slidinguppanel;
+
+import android.support.v4.view.ViewCompat;
+import android.view.View;
+
+import com.sothree.slidinguppanel.SlidingUpPanelLayout.PanelState;
+
+/**
+ * Current position and state of the panel of a {@link SlidingUpPanelLayout}, for views that only
+ * need them when they draw.
+ *
+ * Values are plain volatile reads. The version is incremented every time the position or the
+ * state changes, so a consumer can tell whether anything changed since it last looked. Values
+ * written on the main thread are always consistent with each other when read from it.
+ *
+ * Instead of being called for every intermediate position, subscribers are notified at most once
+ * per animation frame when the version changed, and pull the values they need from the source.
+ */
+public class PanelOffsetSource {
+    /**
+     * Receives change notifications from a {@link PanelOffsetSource}.
+     */
+    public interface Subscriber {
+        /**
+         * Called on the main thread, at most once per frame, when the panel moved or changed
+         * state since the last call.
+         *
+         * @param source The source to read the current values from
+         */
+        public void onPanelOffsetChanged(PanelOffsetSource source);
+    }
+
+    private final View mHost;
+
+    private volatile float mSlideOffset;
+    private volatile int mPanelTop;
+    private volatile PanelState mPanelState;
+    private volatile long mVersion;
+
+    private final Object mLock = new Object();
+    // Null-terminated copy-on-write arrays of Subscriber and View
+    private volatile Object[] mSubscribers = ListenerArrays.EMPTY;
+    private volatile Object[] mInvalidatedViews = ListenerArrays.EMPTY;
+    private long mNotifiedVersion;
+    private boolean mNotificationScheduled;
+
+    private final Runnable mNotifyRunnable = new Runnable() {
+        @Override
+        public void run() {
+            notifySubscribers();
+        }
+    };
+
+    PanelOffsetSource(View host, PanelState state) {
+        mHost = host;
+        mPanelState = state;
+    }
+
+    /**
+     * @return The offset of the panel within its range, from 0-1
+     */
+    public float getSlideOffset() {
+        return mSlideOffset;
+    }
+
+    /**
+     * @return The top of the panel in pixels
+     */
+    public int getPanelTop() {
+        return mPanelTop;
+    }
+
+    /**
+     * @return The state of the panel
+     */
+    public PanelState getPanelState() {
+        return mPanelState;
+    }
+
+    /**
+     * @return A number incremented every time the position or the state of the panel changes
+     */
+    public long getVersion() {
+        return mVersion;
+    }
+
+    /**
+     * Subscribe to change notifications, delivered at most once per frame.
+     *
+     * @param subscriber
+     */
+    public void subscribe(Subscriber subscriber) {
+        synchronized (mLock) {
+            mSubscribers = ListenerArrays.add(mSubscribers, subscriber);
+        }
+    }
+
+    /**
+     * @param subscriber
+     */
+    public void unsubscribe(Subscriber subscriber) {
+        synchronized (mLock) {
+            mSubscribers = ListenerArrays.remove(mSubscribers, subscriber);
+        }
+    }
+
+    /**
+     * Invalidate the given view at most once per frame when the panel moves or changes state,
+     * so that it can read the source when it draws.
+     *
+     * @param view
+     */
+    public void addInvalidatedView(View view) {
+        synchronized (mLock) {
+            mInvalidatedViews = ListenerArrays.add(mInvalidatedViews, view);
+        }
+    }
+
+    /**
+     * @param view
+     */
+    public void removeInvalidatedView(View view) {
+        synchronized (mLock) {
+            mInvalidatedViews = ListenerArrays.remove(mInvalidatedViews, view);
+        }
+    }
+
+    /**
+     * Publish the current values. Must be called on the main thread.
+     */
+    void publish(int panelTop, float slideOffset, PanelState state) {
+        if (panelTop == mPanelTop && slideOffset == mSlideOffset && state == mPanelState) {
+            return;
+        }
+        mPanelTop = panelTop;
+        mSlideOffset = slideOffset;
+        mPanelState = state;
+        mVersion++;
+        if (!mNotificationScheduled && (mSubscribers[0] != null || mInvalidatedViews[0] != null)) {
+            mNotificationScheduled = true;
+            ViewCompat.postOnAnimation(mHost, mNotifyRunnable);
+        }
+    }
+
+    private void notifySubscribers() {
+        mNotificationScheduled = false;
+        final long version = mVersion;
+        if (version == mNotifiedVersion) {
+            return;
+        }
+        mNotifiedVersion = version;
+        final Object[] views = mInvalidatedViews;
+        for (int i = 0; i < views.length && views[i] != null; i++) {
+            ((View) views[i]).invalidate();
+        }
+        final Object[] subscribers = mSubscribers;
+        for (int i = 0; i < subscribers.length && subscribers[i] != null; i++) {
+            ((Subscriber) subscribers[i]).onPanelOffsetChanged(this);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.sothree.slidinguppanel;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Trace;
+
+/**
+ * Optional systrace sections around the hot paths of the panel. When disabled, a section costs a
+ * static field read; section names are constants, so nothing is allocated either way.
+ */
+final class PanelTrace {
+    static final String ON_MEASURE = "SlidingUpPanelLayout#onMeasure";
+    static final String ON_LAYOUT = "SlidingUpPanelLayout#onLayout";
+    static final String DRAW = "SlidingUpPanelLayout#draw";
+    static final String DRAW_CHILD = "SlidingUpPanelLayout#drawChild";
+    static final String DISPATCH_TOUCH_EVENT = "SlidingUpPanelLayout#dispatchTouchEvent";
+    static final String ON_INTERCEPT_TOUCH_EVENT = "SlidingUpPanelLayout#onInterceptTouchEvent";
+    static final String DISPATCH_SLIDE = "SlidingUpPanelLayout#dispatchOnPanelSlide";
+    static final String DISPATCH_STATE_CHANGED = "SlidingUpPanelLayout#dispatchOnPanelStateChanged";
+    static final String CONTINUE_SETTLING = "ViewDragHelper#continueSettling";
+
+    static boolean sEnabled;
+
+    private PanelTrace() {
+    }
+
+    /**
+     * Begin a section if tracing is enabled.
+     *
+     * @return whether a section was begun, to pass to {@link #end(boolean)}
+     */
+    static boolean begin(String sectionName) {
+        if (!sEnabled || Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            return false;
+        }
+        beginSection(sectionName);
+        return true;
+    }
+
+    static void end(boolean begun) {
+        if (begun) {
+            endSection();
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    private static void beginSection(String sectionName) {
+        Trace.beginSection(sectionName);
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    private static void endSection() {
+        Trace.endSection();
+    }
+}
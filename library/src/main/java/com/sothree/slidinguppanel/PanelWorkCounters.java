@@ -0,0 +1,88 @@
+package com.sothree.slidinguppanel;
+
+/**
+ * Counts of the work done by a {@link SlidingUpPanelLayout} and its drag helper since the last
+ * {@link SlidingUpPanelLayout#resetWorkCounters()}. The counts are plain fields updated on the
+ * main thread, so keeping them costs nothing measurable.
+ */
+public class PanelWorkCounters {
+    int layoutPasses;
+    int mainViewLayoutRequests;
+    int invalidations;
+    int slideDispatches;
+    int stateDispatches;
+    int visibilityChanges;
+    int dragMoves;
+    int settleFrames;
+
+    PanelWorkCounters() {
+    }
+
+    /**
+     * @return The number of onLayout passes
+     */
+    public int getLayoutPasses() {
+        return layoutPasses;
+    }
+
+    /**
+     * @return The number of layouts of the main view requested while the panel was dragged
+     */
+    public int getMainViewLayoutRequests() {
+        return mainViewLayoutRequests;
+    }
+
+    /**
+     * @return The number of invalidations of the layout, including the ones posted for the next
+     * animation frame
+     */
+    public int getInvalidations() {
+        return invalidations;
+    }
+
+    /**
+     * @return The number of slide events dispatched to the listeners
+     */
+    public int getSlideDispatches() {
+        return slideDispatches;
+    }
+
+    /**
+     * @return The number of state changes dispatched to the listeners
+     */
+    public int getStateDispatches() {
+        return stateDispatches;
+    }
+
+    /**
+     * @return The number of times a child was hidden or shown because the panel covered it
+     */
+    public int getVisibilityChanges() {
+        return visibilityChanges;
+    }
+
+    /**
+     * @return The number of drag moves applied to the panel
+     */
+    public int getDragMoves() {
+        return dragMoves;
+    }
+
+    /**
+     * @return The number of frames spent settling the panel
+     */
+    public int getSettleFrames() {
+        return settleFrames;
+    }
+
+    void reset() {
+        layoutPasses = 0;
+        mainViewLayoutRequests = 0;
+        invalidations = 0;
+        slideDispatches = 0;
+        stateDispatches = 0;
+        visibilityChanges = 0;
+        dragMoves = 0;
+        settleFrames = 0;
+    }
+}
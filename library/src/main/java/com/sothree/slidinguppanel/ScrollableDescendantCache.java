@@ -0,0 +1,176 @@
+package com.sothree.slidinguppanel;
+
+import android.support.v4.view.NestedScrollingChild;
+import android.support.v4.view.ScrollingView;
+import android.support.v4.view.ViewCompat;
+import android.support.v4.view.ViewPager;
+import android.view.View;
+import android.view.ViewGroup;
+import android.view.ViewParent;
+import android.webkit.WebView;
+import android.widget.AbsListView;
+import android.widget.HorizontalScrollView;
+import android.widget.ScrollView;
+
+/**
+ * Cache of the descendants of a view that may scroll, used to answer canScroll queries without
+ * walking the whole hierarchy under the touch point on every call.
+ *
+ * Only the outermost scrollable views are cached. Their positions are computed from their parent
+ * chain on every query, and their own content, e.g. the recycled rows of a list, is walked under
+ * the touch point like before, so scrolling never makes the cache stale. The owner invalidates
+ * the cache when it is laid out, which includes views being added or removed.
+ */
+class ScrollableDescendantCache {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final ViewGroup mRoot;
+
+    // Candidates in reverse pre-order: topmost views come first
+    private View[] mCandidates = new View[INITIAL_CAPACITY];
+    private int mCount;
+    private boolean mValid;
+
+    ScrollableDescendantCache(ViewGroup root) {
+        mRoot = root;
+    }
+
+    /**
+     * Drop the cached candidates.
+     */
+    void invalidate() {
+        mValid = false;
+    }
+
+    /**
+     * Tests scrollability within the descendants of the root given a delta of dx (and dy).
+     *
+     * @param checkRoot Whether the root itself should be checked for scrollability
+     * @param dx        Delta scrolled in pixels along the X axis
+     * @param dy        Delta scrolled in pixels along the Y axis
+     * @param vertical  Whether vertical scrollability should be checked as well as horizontal
+     * @param x         X coordinate of the active touch point, relative to the root
+     * @param y         Y coordinate of the active touch point, relative to the root
+     * @return true if a view under the point can be scrolled by the given delta
+     */
+    boolean canScroll(boolean checkRoot, int dx, int dy, boolean vertical, int x, int y) {
+        if (!mValid) {
+            rebuild();
+        }
+        for (int i = 0; i < mCount; i++) {
+            final View candidate = mCandidates[i];
+            // Position of the candidate in the coordinates of the root, from its parent chain
+            int left = 0;
+            int top = 0;
+            View v = candidate;
+            while (v != mRoot) {
+                left += v.getLeft();
+                top += v.getTop();
+                final ViewParent parent = v.getParent();
+                if (!(parent instanceof View)) {
+                    // Removed since the last layout
+                    break;
+                }
+                v = (View) parent;
+                left -= v.getScrollX();
+                top -= v.getScrollY();
+            }
+            if (v == mRoot && x >= left && x < left + candidate.getWidth() &&
+                    y >= top && y < top + candidate.getHeight() &&
+                    canScrollUnder(candidate, dx, dy, vertical, x - left, y - top)) {
+                return true;
+            }
+        }
+        return checkRoot && canScrollView(mRoot, dx, dy, vertical);
+    }
+
+    /**
+     * Tests scrollability of the view under the point and of its descendants under the point,
+     * innermost first.
+     *
+     * @param x X coordinate of the point, relative to v
+     * @param y Y coordinate of the point, relative to v
+     */
+    static boolean canScrollUnder(View v, int dx, int dy, boolean vertical, int x, int y) {
+        if (v instanceof ViewGroup) {
+            final ViewGroup group = (ViewGroup) v;
+            final int scrollX = v.getScrollX();
+            final int scrollY = v.getScrollY();
+            // Count backwards - let topmost views consume scroll distance first.
+            for (int i = group.getChildCount() - 1; i >= 0; i--) {
+                final View child = group.getChildAt(i);
+                if (x + scrollX >= child.getLeft() && x + scrollX < child.getRight() &&
+                        y + scrollY >= child.getTop() && y + scrollY < child.getBottom() &&
+                        canScrollUnder(child, dx, dy, vertical, x + scrollX - child.getLeft(),
+                                y + scrollY - child.getTop())) {
+                    return true;
+                }
+            }
+        }
+        return canScrollView(v, dx, dy, vertical);
+    }
+
+    static boolean canScrollView(View v, int dx, int dy, boolean vertical) {
+        return ViewCompat.canScrollHorizontally(v, -dx) ||
+                (vertical && ViewCompat.canScrollVertically(v, -dy));
+    }
+
+    private void rebuild() {
+        clear();
+        for (int i = 0, count = mRoot.getChildCount(); i < count; i++) {
+            collect(mRoot.getChildAt(i));
+        }
+        reverse();
+        mValid = true;
+    }
+
+    private void collect(View v) {
+        if (isCandidate(v)) {
+            // Its content is walked on every query, so that scrolling never invalidates the cache
+            add(v);
+            return;
+        }
+        if (v instanceof ViewGroup) {
+            final ViewGroup group = (ViewGroup) v;
+            for (int i = 0, count = group.getChildCount(); i < count; i++) {
+                collect(group.getChildAt(i));
+            }
+        }
+    }
+
+    private static boolean isCandidate(View v) {
+        if (v instanceof AbsListView || v instanceof ScrollView || v instanceof HorizontalScrollView
+                || v instanceof ViewPager || v instanceof WebView
+                || v instanceof ScrollingView || v instanceof NestedScrollingChild
+                || v.isScrollContainer()) {
+            return true;
+        }
+        // Custom scrolling views, only tested when the cache is rebuilt after a layout
+        return ViewCompat.canScrollHorizontally(v, 1) || ViewCompat.canScrollHorizontally(v, -1)
+                || ViewCompat.canScrollVertically(v, 1) || ViewCompat.canScrollVertically(v, -1);
+    }
+
+    private void add(View v) {
+        if (mCount == mCandidates.length) {
+            View[] candidates = new View[mCount * 2];
+            System.arraycopy(mCandidates, 0, candidates, 0, mCount);
+            mCandidates = candidates;
+        }
+        mCandidates[mCount++] = v;
+    }
+
+    private void reverse() {
+        for (int i = 0, j = mCount - 1; i < j; i++, j--) {
+            View v = mCandidates[i];
+            mCandidates[i] = mCandidates[j];
+            mCandidates[j] = v;
+        }
+    }
+
+    private void clear() {
+        for (int i = 0; i < mCount; i++) {
+            mCandidates[i] = null;
+        }
+        mCount = 0;
+    }
+}
@@ -1,16 +1,87 @@
 package com.sothree.slidinguppanel;
 
+import android.support.v4.view.ViewCompat;
+import android.support.v7.widget.LinearLayoutManager;
 import android.support.v7.widget.RecyclerView;
+import android.support.v7.widget.StaggeredGridLayoutManager;
 import android.view.View;
+import android.view.ViewTreeObserver;
 import android.widget.ListView;
 import android.widget.ScrollView;
 
+import com.sothree.slidinguppanel.core.RowHeightIndex;
+
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * Helper class for determining the current scroll positions for scrollable views. Currently works
  * for ListView, ScrollView and RecyclerView, but the library users can override it to add support
  * for other views.
+ *
+ * The scroll position of a view is computed by a {@link ScrollPositionStrategy} registered for the
+ * view's class (or the closest registered superclass). Use {@link #registerStrategy(Class, ScrollPositionStrategy)}
+ * to add support for new types of views, or to replace the built-in strategies, for instance with
+ * a strategy backed by a {@link RowHeightIndex} for adapters with variable row heights.
  */
 public class ScrollableViewHelper {
+
+    /**
+     * Computes the scroll position of one type of scrollable view. See
+     * {@link #getScrollableViewScrollPosition(View, boolean)} for the meaning of the returned value.
+     */
+    public interface ScrollPositionStrategy {
+        /**
+         * @param scrollableView the scrollable view
+         * @param isSlidingUp whether or not the panel is sliding up or down
+         * @return the scroll position
+         */
+        int getScrollPosition(View scrollableView, boolean isSlidingUp);
+    }
+
+    /**
+     * Marker cached for classes that have no registered strategy.
+     */
+    private static final ScrollPositionStrategy NO_STRATEGY = new ScrollPositionStrategy() {
+        @Override
+        public int getScrollPosition(View scrollableView, boolean isSlidingUp) {
+            return 0;
+        }
+    };
+
+    private final Map<Class<?>, ScrollPositionStrategy> mStrategies = new HashMap<>();
+    private final Map<Class<?>, ScrollPositionStrategy> mResolvedStrategies = new HashMap<>();
+
+    // The class the last strategy was resolved for. The scrollable view rarely changes, so this
+    // saves the map lookup on every touch event, without holding on to the view.
+    private Class<?> mLastClass;
+    private ScrollPositionStrategy mLastStrategy;
+
+    public ScrollableViewHelper() {
+        registerStrategy(ScrollView.class, new ScrollViewStrategy());
+        registerStrategy(ListView.class, new ListViewStrategy(null));
+        registerStrategy(RecyclerView.class, new RecyclerViewStrategy(null));
+    }
+
+    /**
+     * Register the strategy used for the views of the given class and its subclasses that have no
+     * more specific strategy registered.
+     *
+     * @param viewClass the class of the scrollable views
+     * @param strategy the strategy, or null to remove the currently registered one
+     */
+    public void registerStrategy(Class<? extends View> viewClass, ScrollPositionStrategy strategy) {
+        if (strategy == null) {
+            mStrategies.remove(viewClass);
+        } else {
+            mStrategies.put(viewClass, strategy);
+        }
+        mResolvedStrategies.clear();
+        mLastClass = null;
+        mLastStrategy = null;
+    }
+
     /**
      * Returns the current scroll position of the scrollable view. If this method returns zero or
      * less, it means at the scrollable view is in a position such as the panel should handle
@@ -23,41 +94,286 @@ public class ScrollableViewHelper {
      */
     public int getScrollableViewScrollPosition(View scrollableView, boolean isSlidingUp) {
         if (scrollableView == null) return 0;
-        if (scrollableView instanceof ScrollView) {
+        return resolveStrategy(scrollableView).getScrollPosition(scrollableView, isSlidingUp);
+    }
+
+    /**
+     * Find the strategy for the given view, walking up its class hierarchy on the first lookup only.
+     */
+    ScrollPositionStrategy resolveStrategy(View view) {
+        final Class<?> viewClass = view.getClass();
+        if (viewClass == mLastClass) {
+            return mLastStrategy;
+        }
+        ScrollPositionStrategy strategy = mResolvedStrategies.get(viewClass);
+        if (strategy == null) {
+            strategy = NO_STRATEGY;
+            for (Class<?> c = viewClass; c != null && c != Object.class; c = c.getSuperclass()) {
+                ScrollPositionStrategy registered = mStrategies.get(c);
+                if (registered != null) {
+                    strategy = registered;
+                    break;
+                }
+            }
+            mResolvedStrategies.put(viewClass, strategy);
+        }
+        mLastClass = viewClass;
+        mLastStrategy = strategy;
+        return strategy;
+    }
+
+    /**
+     * Keeps a {@link RowHeightIndex} in sync with the rows of one list. The index is updated when
+     * the list is laid out or scrolled, which is when rows are measured or attached, and never by
+     * the touch events querying it. The list is held weakly.
+     */
+    private abstract static class IndexUpdater implements ViewTreeObserver.OnGlobalLayoutListener,
+            ViewTreeObserver.OnScrollChangedListener {
+        final RowHeightIndex mIndex;
+        private WeakReference<View> mView;
+        private WeakReference<ViewTreeObserver> mObserver;
+
+        IndexUpdater(RowHeightIndex index) {
+            mIndex = index;
+        }
+
+        /**
+         * Follow the layouts of the given list, unless they are followed already.
+         */
+        void track(View view) {
+            final ViewTreeObserver observer = view.getViewTreeObserver();
+            if (mView != null && mView.get() == view && mObserver.get() == observer) {
+                return;
+            }
+            // A new list, or the list was attached to another window
+            untrack();
+            observer.addOnGlobalLayoutListener(this);
+            observer.addOnScrollChangedListener(this);
+            mView = new WeakReference<>(view);
+            mObserver = new WeakReference<>(observer);
+            update(view);
+        }
+
+        @SuppressWarnings("deprecation")
+        private void untrack() {
+            final ViewTreeObserver observer = mObserver != null ? mObserver.get() : null;
+            if (observer != null && observer.isAlive()) {
+                // removeOnGlobalLayoutListener is only available from API 16
+                observer.removeGlobalOnLayoutListener(this);
+                observer.removeOnScrollChangedListener(this);
+            }
+            mView = null;
+            mObserver = null;
+        }
+
+        @Override
+        public void onGlobalLayout() {
+            onListChanged();
+        }
+
+        @Override
+        public void onScrollChanged() {
+            onListChanged();
+        }
+
+        private void onListChanged() {
+            final View view = mView != null ? mView.get() : null;
+            if (view == null) {
+                untrack();
+                return;
+            }
+            update(view);
+        }
+
+        /**
+         * Record the row count and the heights of the rows currently laid out.
+         */
+        abstract void update(View view);
+    }
+
+    /**
+     * Strategy for ScrollView, based on the scroll position of the view and the size of its child.
+     */
+    public static class ScrollViewStrategy implements ScrollPositionStrategy {
+        @Override
+        public int getScrollPosition(View scrollableView, boolean isSlidingUp) {
+            ScrollView sv = ((ScrollView) scrollableView);
             if (isSlidingUp) {
-                return scrollableView.getScrollY();
+                return sv.getScrollY();
             } else {
-                ScrollView sv = ((ScrollView) scrollableView);
                 View child = sv.getChildAt(0);
+                if (child == null) return 0;
                 return (child.getBottom() - (sv.getHeight() + sv.getScrollY()));
             }
-        } else if (scrollableView instanceof ListView && ((ListView) scrollableView).getChildCount() > 0) {
+        }
+    }
+
+    /**
+     * Strategy for ListView. The position is exact whenever the first (or last) row is visible,
+     * which is the only case where the panel takes over the scrolling. Otherwise the position is
+     * estimated from the height of the visible rows, unless a {@link RowHeightIndex} is supplied.
+     * The index is then kept up to date with the row count and the heights of the rows laid out.
+     */
+    public static class ListViewStrategy implements ScrollPositionStrategy {
+        private final RowHeightIndex mIndex;
+        private final IndexUpdater mIndexUpdater;
+
+        /**
+         * @param index an index of the row heights of the adapter, or null to estimate the
+         *              position of rows that are not visible
+         */
+        public ListViewStrategy(RowHeightIndex index) {
+            mIndex = index;
+            mIndexUpdater = index == null ? null : new IndexUpdater(index) {
+                @Override
+                void update(View view) {
+                    ListView lv = (ListView) view;
+                    if (lv.getAdapter() == null) return;
+                    mIndex.setCount(lv.getAdapter().getCount());
+                    final int firstPosition = lv.getFirstVisiblePosition();
+                    for (int i = 0, count = lv.getChildCount(); i < count; i++) {
+                        mIndex.setHeight(firstPosition + i, lv.getChildAt(i).getHeight());
+                    }
+                }
+            };
+        }
+
+        @Override
+        public int getScrollPosition(View scrollableView, boolean isSlidingUp) {
             ListView lv = ((ListView) scrollableView);
-            if (lv.getAdapter() == null) return 0;
+            final int childCount = lv.getChildCount();
+            if (lv.getAdapter() == null || childCount == 0) return 0;
+            final int firstPosition = lv.getFirstVisiblePosition();
+            final int dividerHeight = lv.getDividerHeight();
+            if (mIndexUpdater != null) {
+                mIndexUpdater.track(lv);
+            }
             if (isSlidingUp) {
                 View firstChild = lv.getChildAt(0);
-                // Approximate the scroll position based on the top child and the first visible item
-                return lv.getFirstVisiblePosition() * firstChild.getHeight() - firstChild.getTop();
+                final int hidden = lv.getPaddingTop() - firstChild.getTop();
+                if (firstPosition == 0) {
+                    return hidden;
+                }
+                final long above = mIndex != null
+                        ? mIndex.getOffsetOf(firstPosition) + (long) firstPosition * dividerHeight
+                        : (long) firstPosition * (firstChild.getHeight() + dividerHeight);
+                return clampToInt(above + Math.max(hidden, 0));
             } else {
-                View lastChild = lv.getChildAt(lv.getChildCount() - 1);
-                // Approximate the scroll position based on the bottom child and the last visible item
-                return (lv.getAdapter().getCount() - lv.getLastVisiblePosition() - 1) * lastChild.getHeight() + lastChild.getBottom() - lv.getBottom();
+                View lastChild = lv.getChildAt(childCount - 1);
+                final int lastPosition = firstPosition + childCount - 1;
+                final int belowCount = lv.getAdapter().getCount() - lastPosition - 1;
+                final int hidden = lastChild.getBottom() - (lv.getHeight() - lv.getPaddingBottom());
+                if (belowCount <= 0) {
+                    return hidden;
+                }
+                final long below = mIndex != null
+                        ? mIndex.getTotalHeight() - mIndex.getOffsetOf(lastPosition + 1) + (long) belowCount * dividerHeight
+                        : (long) belowCount * (lastChild.getHeight() + dividerHeight);
+                return clampToInt(below + Math.max(hidden, 0));
             }
-        } else if (scrollableView instanceof RecyclerView && ((RecyclerView) scrollableView).getChildCount() > 0) {
+        }
+    }
+
+    /**
+     * Strategy for RecyclerView. Whether the view is at its edge is decided by
+     * canScrollVertically, which is exact for any layout manager; the position itself comes from
+     * the layout manager's scroll offset, extent and range, unless a {@link RowHeightIndex} is
+     * supplied. The index is then kept up to date with the item count and the heights of the items
+     * laid out, and is meant for vertical lists, reversed or not.
+     */
+    public static class RecyclerViewStrategy implements ScrollPositionStrategy {
+        private final RowHeightIndex mIndex;
+        private final IndexUpdater mIndexUpdater;
+
+        /**
+         * @param index an index of the item heights of the adapter, or null to use the scroll
+         *              offset reported by the layout manager
+         */
+        public RecyclerViewStrategy(RowHeightIndex index) {
+            mIndex = index;
+            mIndexUpdater = index == null ? null : new IndexUpdater(index) {
+                @Override
+                void update(View view) {
+                    RecyclerView rv = (RecyclerView) view;
+                    RecyclerView.LayoutManager lm = rv.getLayoutManager();
+                    if (rv.getAdapter() == null || lm == null) return;
+                    mIndex.setCount(rv.getAdapter().getItemCount());
+                    for (int i = 0, count = rv.getChildCount(); i < count; i++) {
+                        View child = rv.getChildAt(i);
+                        final int position = rv.getChildLayoutPosition(child);
+                        if (position != RecyclerView.NO_POSITION) {
+                            mIndex.setHeight(position, lm.getDecoratedMeasuredHeight(child));
+                        }
+                    }
+                }
+            };
+        }
+
+        @Override
+        public int getScrollPosition(View scrollableView, boolean isSlidingUp) {
             RecyclerView rv = ((RecyclerView) scrollableView);
+            final int childCount = rv.getChildCount();
+            if (rv.getAdapter() == null || childCount == 0) return 0;
+            if (!ViewCompat.canScrollVertically(rv, isSlidingUp ? -1 : 1)) {
+                return 0;
+            }
+            if (mIndex == null) {
+                final int offset = rv.computeVerticalScrollOffset();
+                final int position = isSlidingUp
+                        ? offset
+                        : rv.computeVerticalScrollRange() - rv.computeVerticalScrollExtent() - offset;
+                // The view can scroll, so never let the panel take over
+                return Math.max(position, 1);
+            }
+
             RecyclerView.LayoutManager lm = rv.getLayoutManager();
-            if (rv.getAdapter() == null) return 0;
+            mIndexUpdater.track(rv);
+            // The child order is not the adapter order in a reversed layout, nor while items are
+            // animated, so look for the item laid out at the edge the panel would take over from
+            View edge = null;
+            int edgePosition = RecyclerView.NO_POSITION;
+            for (int i = 0; i < childCount; i++) {
+                View child = rv.getChildAt(i);
+                final int childPosition = rv.getChildLayoutPosition(child);
+                if (childPosition == RecyclerView.NO_POSITION) {
+                    continue;
+                }
+                if (edge == null || (isSlidingUp
+                        ? lm.getDecoratedTop(child) < lm.getDecoratedTop(edge)
+                        : lm.getDecoratedBottom(child) > lm.getDecoratedBottom(edge))) {
+                    edge = child;
+                    edgePosition = childPosition;
+                }
+            }
+            if (edge == null) {
+                return 1;
+            }
+            // The items above the edge item come after it in a reversed layout
+            final boolean reversed = isReverseLayout(lm);
+            final long before = mIndex.getOffsetOf(edgePosition);
+            final long after = mIndex.getTotalHeight() - mIndex.getOffsetOf(edgePosition + 1);
+            final long position;
             if (isSlidingUp) {
-                View firstChild = rv.getChildAt(0);
-                // Approximate the scroll position based on the top child and the first visible item
-                return rv.getChildLayoutPosition(firstChild) * lm.getDecoratedMeasuredHeight(firstChild) - lm.getDecoratedTop(firstChild);
+                position = (reversed ? after : before) + rv.getPaddingTop() - lm.getDecoratedTop(edge);
             } else {
-                View lastChild = rv.getChildAt(rv.getChildCount() - 1);
-                // Approximate the scroll position based on the bottom child and the last visible item
-                return (rv.getAdapter().getItemCount() - 1) * lm.getDecoratedMeasuredHeight(lastChild) + lm.getDecoratedBottom(lastChild) - rv.getBottom();
+                position = (reversed ? before : after)
+                        + lm.getDecoratedBottom(edge) - (rv.getHeight() - rv.getPaddingBottom());
             }
-        } else {
-            return 0;
+            return Math.max(clampToInt(position), 1);
+        }
+
+        private static boolean isReverseLayout(RecyclerView.LayoutManager lm) {
+            if (lm instanceof LinearLayoutManager) {
+                return ((LinearLayoutManager) lm).getReverseLayout();
+            }
+            if (lm instanceof StaggeredGridLayoutManager) {
+                return ((StaggeredGridLayoutManager) lm).getReverseLayout();
+            }
+            return false;
         }
     }
+
+    private static int clampToInt(long value) {
+        return (int) Math.min(value, Integer.MAX_VALUE);
+    }
 }
@@ -0,0 +1,174 @@
+package com.sothree.slidinguppanel;
+
+import android.graphics.Rect;
+import android.view.View;
+import android.view.ViewParent;
+
+import java.util.ArrayList;
+
+/**
+ * Spatial index of the scrollable views registered with a {@link SlidingUpPanelLayout}.
+ *
+ * The bounds of every scrollable view are cached relative to the sliding panel, so they stay
+ * valid while the panel is dragged, and are only recomputed after a layout or a scroll change.
+ * The panel is split in horizontal bands; each band keeps a bit set of the views overlapping it,
+ * so a lookup only tests the few views that may be under the touch.
+ */
+class ScrollableViewIndex {
+    private static final int BAND_COUNT = 16;
+    private static final int INDEXED_ENTRIES = 64;
+
+    /**
+     * A registered scrollable view along with its cached bounds and touch state.
+     */
+    static final class Entry {
+        final View view;
+        final Rect bounds = new Rect();
+
+        /**
+         * Whether the view (rather than the panel) is handling the current touch stream.
+         */
+        boolean handlingTouch;
+
+        Entry(View view) {
+            this.view = view;
+        }
+    }
+
+    private final ArrayList<Entry> mEntries = new ArrayList<>();
+    private final long[] mBands = new long[BAND_COUNT];
+    private int mBandHeight;
+    private boolean mDirty = true;
+
+    void add(View view) {
+        if (view == null || indexOf(view) >= 0) {
+            return;
+        }
+        mEntries.add(new Entry(view));
+        mDirty = true;
+    }
+
+    void remove(View view) {
+        final int index = indexOf(view);
+        if (index >= 0) {
+            mEntries.remove(index);
+            mDirty = true;
+        }
+    }
+
+    void clear() {
+        mEntries.clear();
+        mDirty = true;
+    }
+
+    boolean isEmpty() {
+        return mEntries.isEmpty();
+    }
+
+    /**
+     * Mark the cached bounds as stale. Must be called when the views inside the panel are laid out
+     * or scrolled.
+     */
+    void invalidate() {
+        mDirty = true;
+    }
+
+    /**
+     * Find the innermost registered view under the given point.
+     *
+     * @param panel the sliding panel
+     * @param x     X coordinate relative to the panel
+     * @param y     Y coordinate relative to the panel
+     * @return the entry of the view under the point, or null if there is none
+     */
+    Entry findEntryUnder(View panel, int x, int y) {
+        if (mEntries.isEmpty() || panel == null) {
+            return null;
+        }
+        if (mDirty) {
+            rebuild(panel);
+        }
+        if (y < 0 || y >= panel.getHeight()) {
+            return null;
+        }
+
+        Entry result = null;
+        long candidates = mBands[Math.min(y / mBandHeight, BAND_COUNT - 1)];
+        while (candidates != 0) {
+            final int i = Long.numberOfTrailingZeros(candidates);
+            candidates &= candidates - 1;
+            result = pickInnermost(result, mEntries.get(i), x, y);
+        }
+        // Entries that do not fit in the bit sets are always tested
+        for (int i = INDEXED_ENTRIES, count = mEntries.size(); i < count; i++) {
+            result = pickInnermost(result, mEntries.get(i), x, y);
+        }
+        return result;
+    }
+
+    private static Entry pickInnermost(Entry current, Entry candidate, int x, int y) {
+        if (!candidate.bounds.contains(x, y) || !candidate.view.isShown()) {
+            return current;
+        }
+        if (current == null || area(candidate.bounds) < area(current.bounds)) {
+            return candidate;
+        }
+        return current;
+    }
+
+    private static long area(Rect r) {
+        return (long) r.width() * r.height();
+    }
+
+    private void rebuild(View panel) {
+        mBandHeight = Math.max(1, (panel.getHeight() + BAND_COUNT - 1) / BAND_COUNT);
+        for (int band = 0; band < BAND_COUNT; band++) {
+            mBands[band] = 0;
+        }
+        for (int i = 0, count = mEntries.size(); i < count; i++) {
+            final Entry entry = mEntries.get(i);
+            if (!computeBoundsInPanel(entry.view, panel, entry.bounds) || i >= INDEXED_ENTRIES) {
+                continue;
+            }
+            final int firstBand = Math.max(0, entry.bounds.top / mBandHeight);
+            final int lastBand = Math.min(BAND_COUNT - 1, (entry.bounds.bottom - 1) / mBandHeight);
+            for (int band = firstBand; band <= lastBand; band++) {
+                mBands[band] |= 1L << i;
+            }
+        }
+        mDirty = false;
+    }
+
+    /**
+     * Compute the bounds of a descendant of the panel in the panel's coordinates. The bounds are
+     * left empty if the view is not currently attached under the panel.
+     */
+    private static boolean computeBoundsInPanel(View view, View panel, Rect out) {
+        int left = 0;
+        int top = 0;
+        View current = view;
+        while (current != panel) {
+            final ViewParent parent = current.getParent();
+            if (!(parent instanceof View)) {
+                out.setEmpty();
+                return false;
+            }
+            left += current.getLeft();
+            top += current.getTop();
+            current = (View) parent;
+            left -= current.getScrollX();
+            top -= current.getScrollY();
+        }
+        out.set(left, top, left + view.getWidth(), top + view.getHeight());
+        return !out.isEmpty();
+    }
+
+    private int indexOf(View view) {
+        for (int i = 0, count = mEntries.size(); i < count; i++) {
+            if (mEntries.get(i).view == view) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -1,6 +1,7 @@
 package com.sothree.slidinguppanel;
 
 import android.annotation.SuppressLint;
+import android.annotation.TargetApi;
 import android.content.Context;
 import android.content.res.TypedArray;
 import android.graphics.Canvas;
@@ -12,6 +13,7 @@ import android.os.Build;
 import android.os.Bundle;
 import android.os.Parcel;
 import android.os.Parcelable;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
 import android.support.v4.app.BundleCompat;
 import android.support.v4.view.MotionEventCompat;
@@ -21,14 +23,16 @@ import android.view.Gravity;
 import android.view.MotionEvent;
 import android.view.View;
 import android.view.ViewGroup;
+import android.view.ViewTreeObserver;
 import android.view.accessibility.AccessibilityEvent;
 import android.view.animation.AnimationUtils;
+import android.view.animation.DecelerateInterpolator;
 import android.view.animation.Interpolator;
 
+import com.sothree.slidinguppanel.core.PanelGeometry;
 import com.sothree.slidinguppanel.library.R;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.concurrent.Executor;
 
 public class SlidingUpPanelLayout extends ViewGroup {
 
@@ -150,9 +154,9 @@ public class SlidingUpPanelLayout extends ViewGroup {
     private int mDragViewResId = -1;
 
     /**
-     * If provided, the panel will transfer the scroll from this view to itself when needed.
+     * If provided, the panel will transfer the scroll from these views to itself when needed.
      */
-    private View mScrollableView;
+    private final ScrollableViewIndex mScrollableViews = new ScrollableViewIndex();
     private int mScrollableViewResId;
     private ScrollableViewHelper mScrollableViewHelper = new ScrollableViewHelper();
 
@@ -179,6 +183,74 @@ public class SlidingUpPanelLayout extends ViewGroup {
 
     private PanelState mSlideState = DEFAULT_SLIDE_STATE;
 
+    /**
+     * True when the panel rests in the HIDDEN state. A dormant panel is not measured, laid out or
+     * drawn, and touch events go straight to the children.
+     */
+    private boolean mPanelDormant;
+
+    /**
+     * The measure specs each child was last measured with, indexed by child index. A child is
+     * only measured again if its specs changed or it requested a layout.
+     */
+    private final int[] mChildWidthMeasureSpecs = new int[2];
+    private final int[] mChildHeightMeasureSpecs = new int[2];
+
+    /**
+     * Number of onMeasure passes, and of measures of each child, since the last reset.
+     */
+    private int mMeasurePassCount;
+    private final int[] mChildMeasureCounts = new int[2];
+
+    /**
+     * When enabled, layout requests coming only from a wrap_content panel are handled by
+     * measuring and laying out the panel alone, see {@link #setIncrementalPanelLayoutEnabled}.
+     */
+    private boolean mIncrementalPanelLayoutEnabled;
+    /**
+     * Set when the pending layout request came up from the panel content alone, cleared by any
+     * other request and when the main view is measured.
+     */
+    private boolean mPanelOnlyLayoutRequested;
+    private int mPanelRelayoutCount;
+
+    /**
+     * Header of the panel measured alone while the panel is collapsed, see
+     * {@link #setPanelHeaderView(View)}, and the declared height of the expanded panel, or 0.
+     */
+    private View mPanelHeaderView;
+    private int mExpandedPanelHeight;
+    /**
+     * Set when only the header of the panel was measured since the last complete measure, and
+     * while the header waits to be laid out with its new size.
+     */
+    private boolean mPanelBodyStale;
+    private boolean mPanelHeaderLayoutPending;
+
+    /**
+     * State of a running panel height animation. While it runs the panel height only goes
+     * through the geometry table and the panel position; it is committed when the animation ends.
+     */
+    private boolean mPanelHeightAnimating;
+    private int mAnimatedPanelHeight;
+    private int mPanelHeightAnimationFrom;
+    private int mPanelHeightAnimationTo;
+    private long mPanelHeightAnimationStart;
+    private int mPanelHeightAnimationDuration;
+    private Interpolator mPanelHeightInterpolator;
+
+    /**
+     * Default interpolator of the panel height animations, stateless and shared
+     */
+    private static final Interpolator DEFAULT_PANEL_HEIGHT_INTERPOLATOR = new DecelerateInterpolator();
+
+    private final Runnable mPanelHeightAnimationRunnable = new Runnable() {
+        @Override
+        public void run() {
+            runPanelHeightAnimationFrame();
+        }
+    };
+
     /**
      * If the current slide state is DRAGGING, this will store the last non dragging state
      */
@@ -191,9 +263,16 @@ public class SlidingUpPanelLayout extends ViewGroup {
     private float mSlideOffset;
 
     /**
-     * How far in pixels the slideable panel may move.
+     * Pixel positions of the panel in its resting states, and how far it may move. Only
+     * recomputed when the layout is measured or one of its inputs changes.
+     */
+    private final PanelGeometry mGeometry = new PanelGeometry();
+
+    /**
+     * The current top of the slideable panel. This is the canonical position of the panel while
+     * it moves; mSlideOffset is derived from it.
      */
-    private int mSlideRange;
+    private int mPanelTop;
 
     /**
      * An anchor point where the panel can stop during sliding
@@ -214,9 +293,79 @@ public class SlidingUpPanelLayout extends ViewGroup {
     private float mPrevMotionY;
     private float mInitialMotionX;
     private float mInitialMotionY;
-    private boolean mIsScrollableViewHandlingTouch = false;
 
-    private List<PanelSlideListener> mPanelSlideListeners = new ArrayList<>();
+    /**
+     * The scrollable view under the initial touch of the current gesture, if any.
+     */
+    private ScrollableViewIndex.Entry mTouchedScrollable;
+
+    private final ViewTreeObserver.OnScrollChangedListener mScrollChangedListener = new ViewTreeObserver.OnScrollChangedListener() {
+        @Override
+        public void onScrollChanged() {
+            // Scrollable views inside a scrolled container (e.g. the pages of a ViewPager) moved
+            mScrollableViews.invalidate();
+        }
+    };
+
+    private final PanelListenerDispatcher mListenerDispatcher = new PanelListenerDispatcher(this);
+    private final PanelOffsetSource mOffsetSource = new PanelOffsetSource(this, DEFAULT_SLIDE_STATE);
+
+    private final FrameStatsCollector mFrameStatsCollector = new FrameStatsCollector(this);
+    private final TouchLatencyTracker mTouchLatencyTracker = new TouchLatencyTracker();
+    private final PanelWorkCounters mWorkCounters = new PanelWorkCounters();
+
+    /**
+     * Listener set with {@link #setFrameStatsListener(FrameStatsListener)}, or null
+     */
+    private FrameStatsListener mFrameStatsListener;
+
+    /**
+     * Frame statistics of the last gesture, shown by the debug overlay
+     */
+    private PanelFrameStats mLastGestureStats;
+
+    private final FrameStatsListener mGestureStatsListener = new FrameStatsListener() {
+        @Override
+        public void onGestureFrameStats(PanelFrameStats stats) {
+            mLastGestureStats = stats;
+            if (mFrameStatsListener != null) {
+                mFrameStatsListener.onGestureFrameStats(stats);
+            }
+            if (mDebugOverlayEnabled) {
+                invalidate();
+            }
+        }
+    };
+
+    /**
+     * Whether the work counters and the panel state are drawn over the layout
+     */
+    private boolean mDebugOverlayEnabled;
+    private Paint mDebugOverlayPaint;
+    private StringBuilder mDebugOverlayText;
+    private char[] mDebugOverlayChars;
+    private static final int DEBUG_OVERLAY_LINES = 5;
+
+    /**
+     * True while an invalidation posted for the next animation frame is pending. It was counted
+     * when posted, so the invalidate() call it ends with is not counted again.
+     */
+    private boolean mInvalidateOnAnimationPending;
+
+    /**
+     * Recorder of the panel drags, or null
+     */
+    private GestureTelemetry mGestureTelemetry;
+
+    /**
+     * Debug timer of the listener callbacks, or null
+     */
+    private ListenerWatchdog mListenerWatchdog;
+
+    /**
+     * View properties driven by the slide offset, or null
+     */
+    private OffsetBindings mOffsetBindings;
     private View.OnClickListener mFadeOnClickListener;
 
     private final ViewDragHelper mDragHelper;
@@ -230,6 +379,11 @@ public class SlidingUpPanelLayout extends ViewGroup {
 
     private final Rect mTmpRect = new Rect();
 
+    /**
+     * Scrollable descendants of this layout, for canScroll checks on the layout itself.
+     */
+    private final ScrollableDescendantCache mScrollableDescendants = new ScrollableDescendantCache(this);
+
     /**
      * Listener for monitoring events about sliding panes.
      */
@@ -250,6 +404,137 @@ public class SlidingUpPanelLayout extends ViewGroup {
         public void onPanelStateChanged(View panel, PanelState previousState, PanelState newState);
     }
 
+    /**
+     * Listener for the position of the sliding pane, called on every slide with primitive values
+     * only.
+     */
+    public interface PanelSlideOffsetListener {
+        /**
+         * Called when a sliding pane's position changes.
+         *
+         * @param panelTop    The new top of the sliding pane in pixels
+         * @param slideOffset The new offset of this sliding pane within its range, from 0-1
+         */
+        public void onPanelSlide(int panelTop, float slideOffset);
+    }
+
+    /**
+     * When a listener registered with
+     * {@link #addPanelSlideListener(PanelSlideListener, DeliveryMode)} is called.
+     */
+    public enum DeliveryMode {
+        /**
+         * Called immediately from the drag or settle callback, for every event.
+         */
+        IMMEDIATE,
+        /**
+         * Called on the next animation frame. Slide events are conflated to the latest position.
+         */
+        FRAME,
+        /**
+         * Called when the main looper next goes idle, which may be between two touch events of a
+         * gesture. Slide events are conflated to the latest position.
+         */
+        IDLE
+    }
+
+    /**
+     * An event of the panel delivered to a {@link PanelEventListener}. Events are pooled: an
+     * event is only valid during the call to the listener and must not be kept afterwards.
+     */
+    public static final class PanelEvent {
+        public static final int TYPE_SLIDE = 0;
+        public static final int TYPE_STATE_CHANGED = 1;
+
+        private int mType;
+        private int mPanelTop;
+        private float mSlideOffset;
+        private PanelState mPreviousState;
+        private PanelState mNewState;
+
+        PanelEvent() {
+        }
+
+        void setSlide(int panelTop, float slideOffset) {
+            mType = TYPE_SLIDE;
+            mPanelTop = panelTop;
+            mSlideOffset = slideOffset;
+        }
+
+        void setStateChange(PanelState previousState, PanelState newState) {
+            mType = TYPE_STATE_CHANGED;
+            mPreviousState = previousState;
+            mNewState = newState;
+        }
+
+        void clear() {
+            mPreviousState = null;
+            mNewState = null;
+        }
+
+        /**
+         * @return {@link #TYPE_SLIDE} or {@link #TYPE_STATE_CHANGED}
+         */
+        public int getType() {
+            return mType;
+        }
+
+        /**
+         * @return The top of the sliding pane in pixels, for slide events
+         */
+        public int getPanelTop() {
+            return mPanelTop;
+        }
+
+        /**
+         * @return The offset of the sliding pane within its range, from 0-1, for slide events
+         */
+        public float getSlideOffset() {
+            return mSlideOffset;
+        }
+
+        /**
+         * @return The previous state, for state change events
+         */
+        public PanelState getPreviousState() {
+            return mPreviousState;
+        }
+
+        /**
+         * @return The new state, for state change events
+         */
+        public PanelState getNewState() {
+            return mNewState;
+        }
+    }
+
+    /**
+     * Listener receiving the panel events on an executor, see
+     * {@link #addPanelEventListener(PanelEventListener, Executor)}.
+     */
+    public interface PanelEventListener {
+        /**
+         * Called on the executor of the listener for each panel event.
+         *
+         * @param event The event, only valid during this call
+         */
+        public void onPanelEvent(PanelEvent event);
+    }
+
+    /**
+     * Listener for the frame statistics of the panel gestures, see
+     * {@link #setFrameStatsListener(FrameStatsListener)}.
+     */
+    public interface FrameStatsListener {
+        /**
+         * Called on the main thread when the panel stops moving after a drag or a programmatic
+         * slide.
+         *
+         * @param stats The frame statistics of the gesture
+         */
+        public void onGestureFrameStats(PanelFrameStats stats);
+    }
+
     /**
      * No-op stubs for {@link PanelSlideListener}. If you only want to implement a subset
      * of the listener methods you can extend this instead of implement the full interface.
@@ -346,6 +631,8 @@ public class SlidingUpPanelLayout extends ViewGroup {
 
         mDragHelper = ViewDragHelper.create(this, 0.5f, scrollerInterpolator, new DragHelperCallback());
         mDragHelper.setMinVelocity(mMinFlingVelocity * density);
+        mDragHelper.setWorkCounters(mWorkCounters);
+        mDragHelper.setScrollableDescendants(mScrollableDescendants);
 
         mIsTouchEnabled = true;
     }
@@ -370,6 +657,7 @@ public class SlidingUpPanelLayout extends ViewGroup {
         }
         mIsSlidingUp = gravity == Gravity.BOTTOM;
         if (!mFirstLayout) {
+            updateGeometry();
             requestLayout();
         }
     }
@@ -411,12 +699,14 @@ public class SlidingUpPanelLayout extends ViewGroup {
      * @param val A height in pixels
      */
     public void setPanelHeight(int val) {
+        cancelPanelHeightAnimation();
         if (getPanelHeight() == val) {
             return;
         }
 
         mPanelHeight = val;
         if (!mFirstLayout) {
+            updateGeometry();
             requestLayout();
         }
 
@@ -431,6 +721,180 @@ public class SlidingUpPanelLayout extends ViewGroup {
         smoothSlideTo(0, 0);
     }
 
+    /**
+     * Animate the collapsed panel height in pixels, e.g. to make room for content appearing at
+     * the bottom of the screen. The panel is moved every frame without a layout pass; the main
+     * view is not measured again, its bounds are stretched or shrunk to meet the panel until the
+     * height is committed with a single layout at the end of the animation.
+     *
+     * @param val      A height in pixels
+     * @param duration The duration of the animation in milliseconds
+     */
+    public void animatePanelHeight(int val, int duration) {
+        animatePanelHeight(val, duration, null);
+    }
+
+    /**
+     * Animate the collapsed panel height in pixels.
+     *
+     * @param val          A height in pixels
+     * @param duration     The duration of the animation in milliseconds
+     * @param interpolator The interpolator of the animation, or null for a decelerating one
+     * @see #animatePanelHeight(int, int)
+     */
+    public void animatePanelHeight(int val, int duration, Interpolator interpolator) {
+        if (mFirstLayout || duration <= 0 || mSlideableView == null || !ViewCompat.isAttachedToWindow(this)) {
+            setPanelHeight(val);
+            return;
+        }
+        final boolean running = mPanelHeightAnimating;
+        startPanelHeightAnimation(val, duration, interpolator);
+        if (mPanelHeightAnimating && !running) {
+            ViewCompat.postOnAnimation(this, mPanelHeightAnimationRunnable);
+        }
+    }
+
+    /**
+     * Start animating the panel height from its current, possibly animated, value. The frames
+     * are applied by {@link #stepPanelHeightAnimation(float)}.
+     */
+    void startPanelHeightAnimation(int val, int duration, Interpolator interpolator) {
+        final int from = mPanelHeightAnimating ? mAnimatedPanelHeight : mPanelHeight;
+        if (from == val) {
+            cancelPanelHeightAnimation();
+            return;
+        }
+        mPanelHeightAnimationFrom = from;
+        mPanelHeightAnimationTo = val;
+        mAnimatedPanelHeight = from;
+        mPanelHeightAnimationStart = AnimationUtils.currentAnimationTimeMillis();
+        mPanelHeightAnimationDuration = duration;
+        mPanelHeightInterpolator = interpolator != null ? interpolator : DEFAULT_PANEL_HEIGHT_INTERPOLATOR;
+        mPanelHeightAnimating = true;
+    }
+
+    private void runPanelHeightAnimationFrame() {
+        if (!mPanelHeightAnimating) {
+            return;
+        }
+        final long elapsed = AnimationUtils.currentAnimationTimeMillis() - mPanelHeightAnimationStart;
+        stepPanelHeightAnimation(Math.min(1.f, (float) elapsed / mPanelHeightAnimationDuration));
+        if (mPanelHeightAnimating) {
+            ViewCompat.postOnAnimation(this, mPanelHeightAnimationRunnable);
+        }
+    }
+
+    /**
+     * Move the panel and the main view edge to the given fraction of the panel height animation,
+     * without a layout pass. The final height is committed at 1.
+     */
+    void stepPanelHeightAnimation(float fraction) {
+        if (!mPanelHeightAnimating) {
+            return;
+        }
+        mAnimatedPanelHeight = mPanelHeightAnimationFrom + Math.round(
+                (mPanelHeightAnimationTo - mPanelHeightAnimationFrom) * mPanelHeightInterpolator.getInterpolation(fraction));
+        updateGeometry();
+
+        offsetPanelToRestingTop();
+        applyMainViewInset();
+
+        if (fraction < 1.f) {
+            return;
+        }
+        // Commit the final height with a real layout pass, which also lays out the main view at
+        // its new measured height
+        mPanelHeightAnimating = false;
+        mPanelHeight = mPanelHeightAnimationTo;
+        updateGeometry();
+        requestLayout();
+    }
+
+    /**
+     * Stretch or shrink the main view by the difference between the committed and the animated
+     * panel heights, so that it meets the panel without being measured again. It is back to its
+     * measured height once the animation stops, and at every layout.
+     */
+    private void applyMainViewInset() {
+        if (mMainView == null || mMainView.getVisibility() == GONE
+                || Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+            // Older releases cannot resize a view outside of a layout, the clip hides the overlap
+            return;
+        }
+        int inset = 0;
+        if (mPanelHeightAnimating && !mOverlayContent && mSlideState != PanelState.HIDDEN) {
+            inset = mPanelHeight - mAnimatedPanelHeight;
+        }
+        setViewBottom(mMainView, mMainView.getTop() + mMainView.getMeasuredHeight() + inset);
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static void setViewBottom(View view, int bottom) {
+        if (view.getBottom() != bottom) {
+            view.setBottom(bottom);
+        }
+    }
+
+    /**
+     * Move the panel to the position of its state in the geometry table without a layout pass.
+     * The drag helper owns the panel position while dragging, so nothing is done then.
+     */
+    private void offsetPanelToRestingTop() {
+        if (mSlideState == PanelState.DRAGGING || mSlideableView == null) {
+            return;
+        }
+        final int dy = getRestingPanelTop() - mSlideableView.getTop();
+        if (dy != 0) {
+            mSlideableView.offsetTopAndBottom(dy);
+            if (!mIsSlidingUp && !mOverlayContent && mMainView != null) {
+                mMainView.offsetTopAndBottom(dy);
+            }
+            mPanelTop = mSlideableView.getTop();
+            publishPanelPosition();
+            invalidate();
+        }
+    }
+
+    /**
+     * Set how much of the edge the panel collapses to is covered, in pixels, e.g. by the soft
+     * keyboard. The collapsed panel stays above the covered part, and the expanded panel keeps its
+     * position. The panel is moved right away without a layout pass and without changing its
+     * state, so this can be called on every frame of an inset animation.
+     *
+     * @param inset The covered height in pixels
+     */
+    public void setPanelInset(int inset) {
+        if (inset < 0) {
+            throw new IllegalArgumentException("Panel inset must not be negative");
+        }
+        if (mGeometry.getInset() == inset) {
+            return;
+        }
+        mGeometry.setInset(inset);
+        mListenerDispatcher.resetSlidePosition();
+        if (!mFirstLayout) {
+            offsetPanelToRestingTop();
+        }
+    }
+
+    /**
+     * @return The current panel inset in pixels
+     */
+    public int getPanelInset() {
+        return mGeometry.getInset();
+    }
+
+    private void cancelPanelHeightAnimation() {
+        if (mPanelHeightAnimating) {
+            mPanelHeightAnimating = false;
+            removeCallbacks(mPanelHeightAnimationRunnable);
+            updateGeometry();
+            // Back from the half-animated position to the one of the committed height
+            offsetPanelToRestingTop();
+            applyMainViewInset();
+        }
+    }
+
     /**
      * @return The current shadow height
      */
@@ -494,15 +958,68 @@ public class SlidingUpPanelLayout extends ViewGroup {
         mMinFlingVelocity = val;
     }
 
+    /**
+     * Enable resampling of the drag input. When enabled, the panel follows the pointer position
+     * interpolated from all the samples batched in each touch event, which evens out the motion
+     * on high rate touch screens.
+     *
+     * @param enabled true to resample the drag input
+     */
+    public void setInputResamplingEnabled(boolean enabled) {
+        mDragHelper.setInputResamplingEnabled(enabled);
+    }
+
+    /**
+     * Enable prediction of the drag position. When enabled, the panel is drawn where the finger
+     * is expected to be when the frame is displayed instead of where it was last sampled, which
+     * hides about one frame of latency. Releasing the panel is not affected by the prediction.
+     *
+     * @param enabled true to predict the drag position
+     */
+    public void setTouchPredictionEnabled(boolean enabled) {
+        mDragHelper.setTouchPredictionEnabled(enabled);
+    }
+
+    /**
+     * Enable coalescing of the drag updates to one per frame. When enabled, touch events only
+     * record the newest panel position; the position, parallax, main view size and slide
+     * listeners are updated once per frame. This avoids redundant work when the touch screen
+     * reports events faster than the display refreshes.
+     *
+     * @param enabled true to coalesce drag updates
+     */
+    public void setDragFrameCoalescingEnabled(boolean enabled) {
+        mDragHelper.setFrameCoalescingEnabled(enabled);
+    }
+
+    /**
+     * Enable incremental layout of a wrap_content panel. When enabled, the layout pass following a
+     * size change of the content of the panel measures and lays out the panel alone: the main
+     * view is neither measured nor laid out again. The top of the panel stays where it is while
+     * dragging, and otherwise slides to the new position of its state. This only applies when the
+     * main view does not depend on the panel size, i.e. when the panel slides up or overlays the
+     * content, and any other layout request in the same frame runs a full layout.
+     *
+     * @param enabled true to lay out panel content changes incrementally
+     */
+    public void setIncrementalPanelLayoutEnabled(boolean enabled) {
+        mIncrementalPanelLayoutEnabled = enabled;
+    }
+
+    /**
+     * @return The number of incremental panel layouts since the last {@link #resetMeasureCounters()}
+     */
+    public int getIncrementalPanelLayoutCount() {
+        return mPanelRelayoutCount;
+    }
+
     /**
      * Adds a panel slide listener
      *
      * @param listener
      */
     public void addPanelSlideListener(PanelSlideListener listener) {
-        synchronized (mPanelSlideListeners) {
-            mPanelSlideListeners.add(listener);
-        }
+        mListenerDispatcher.addSlideListener(listener);
     }
 
     /**
@@ -511,9 +1028,279 @@ public class SlidingUpPanelLayout extends ViewGroup {
      * @param listener
      */
     public void removePanelSlideListener(PanelSlideListener listener) {
-        synchronized (mPanelSlideListeners) {
-            mPanelSlideListeners.remove(listener);
+        mListenerDispatcher.removeSlideListener(listener);
+    }
+
+    /**
+     * Set view properties driven by the slide offset, evaluated together with the parallax
+     * whenever the panel moves. This replaces a slide listener setting the properties itself.
+     *
+     * @param bindings The bindings, or null to remove them
+     */
+    public void setOffsetBindings(OffsetBindings bindings) {
+        mOffsetBindings = bindings;
+        if (bindings != null) {
+            bindings.reset();
+            if (!mFirstLayout) {
+                bindings.apply(mSlideOffset);
+            }
+        }
+    }
+
+    /**
+     * @return The view properties driven by the slide offset, or null
+     */
+    public OffsetBindings getOffsetBindings() {
+        return mOffsetBindings;
+    }
+
+    /**
+     * Record the frame intervals of every panel gesture, from the start of a drag to the end of
+     * the settling, and report them to the given listener. Frames are timed from vsync callbacks
+     * on API 16 and later.
+     *
+     * @param listener The listener, or null to stop recording
+     */
+    public void setFrameStatsListener(FrameStatsListener listener) {
+        mFrameStatsListener = listener;
+        updateFrameStatsCollector();
+    }
+
+    private void updateFrameStatsCollector() {
+        mFrameStatsCollector.setListener(mFrameStatsListener != null || mDebugOverlayEnabled
+                ? mGestureStatsListener : null);
+    }
+
+    /**
+     * Record the start and end states, distance, duration, release velocity and target of every
+     * drag of the panel, and whether the touch moved between a scrollable view and the panel.
+     * Recording does not allocate; records are delivered in batches to the sink on the executor.
+     *
+     * @param sink     The sink, or null to stop recording
+     * @param executor The executor the sink is called on, e.g. a single background thread
+     */
+    public void setGestureTelemetrySink(GestureTelemetry.Sink sink, Executor executor) {
+        if (sink != null && executor == null) {
+            throw new IllegalArgumentException("Executor cannot be null");
+        }
+        if (mGestureTelemetry != null) {
+            mGestureTelemetry.flush();
+        }
+        mGestureTelemetry = sink == null ? null : new GestureTelemetry(sink, executor);
+    }
+
+    /**
+     * Deliver the gesture records not delivered yet to the telemetry sink.
+     */
+    public void flushGestureTelemetry() {
+        if (mGestureTelemetry != null) {
+            mGestureTelemetry.flush();
+        }
+    }
+
+    /**
+     * Time the listener callbacks made on the main thread, and report the ones that take longer
+     * than the budget of the watchdog or request a layout from a slide callback. Meant for debug
+     * builds only.
+     *
+     * @param watchdog The watchdog, or null to stop timing
+     */
+    public void setListenerWatchdog(ListenerWatchdog watchdog) {
+        mListenerWatchdog = watchdog;
+        mListenerDispatcher.setWatchdog(watchdog);
+    }
+
+    /**
+     * @return The watchdog timing the listener callbacks, or null
+     */
+    public ListenerWatchdog getListenerWatchdog() {
+        return mListenerWatchdog;
+    }
+
+    /**
+     * @return The counts of the work done by this layout since the last
+     * {@link #resetWorkCounters()}
+     */
+    public PanelWorkCounters getWorkCounters() {
+        return mWorkCounters;
+    }
+
+    /**
+     * Reset the work counters and the measure counters to zero.
+     */
+    public void resetWorkCounters() {
+        mWorkCounters.reset();
+        resetMeasureCounters();
+    }
+
+    /**
+     * Draw the panel state and offset, the work counters and the frame statistics of the last
+     * gesture over the layout. Meant for debug builds only.
+     *
+     * @param enabled true to draw the overlay
+     */
+    public void setDebugOverlayEnabled(boolean enabled) {
+        if (mDebugOverlayEnabled == enabled) {
+            return;
+        }
+        mDebugOverlayEnabled = enabled;
+        if (enabled && mDebugOverlayPaint == null) {
+            mDebugOverlayPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+            mDebugOverlayPaint.setTextSize(12 * getResources().getDisplayMetrics().scaledDensity);
+            mDebugOverlayText = new StringBuilder(128);
+            mDebugOverlayChars = new char[128];
+        }
+        updateFrameStatsCollector();
+        invalidate();
+    }
+
+    /**
+     * @return true if the debug overlay is drawn
+     */
+    public boolean isDebugOverlayEnabled() {
+        return mDebugOverlayEnabled;
+    }
+
+    /**
+     * Enable systrace sections around the measure, layout, draw, touch and listener dispatch
+     * code of all the panels, and the recording of their touch to draw latency. Sections are
+     * only emitted on API 18 and later. Disabled tracing costs nothing.
+     *
+     * @param enabled true to enable tracing
+     */
+    public static void setTracingEnabled(boolean enabled) {
+        PanelTrace.sEnabled = enabled;
+    }
+
+    /**
+     * @return true if tracing is enabled
+     */
+    public static boolean isTracingEnabled() {
+        return PanelTrace.sEnabled;
+    }
+
+    /**
+     * Returns a percentile of the latency between the touch events dragging the panel and the
+     * draw showing the new position, over the last drag frames recorded while tracing was
+     * enabled. The draw time is when the frame is drawn, before it reaches the display.
+     *
+     * @param percent A percentile, from 0 to 100
+     * @return The latency in milliseconds, or 0 if nothing was recorded
+     */
+    public int getTouchLatencyPercentile(float percent) {
+        return mTouchLatencyTracker.getPercentileMillis(percent);
+    }
+
+    /**
+     * @return The number of latency samples behind {@link #getTouchLatencyPercentile(float)}
+     */
+    public int getTouchLatencySampleCount() {
+        return mTouchLatencyTracker.getCount();
+    }
+
+    /**
+     * Forget the recorded touch to draw latencies.
+     */
+    public void resetTouchLatency() {
+        mTouchLatencyTracker.clear();
+    }
+
+    /**
+     * @return The source of the current panel position and state, for views that read them when
+     * they draw instead of listening to every slide event
+     */
+    public PanelOffsetSource getPanelOffsetSource() {
+        return mOffsetSource;
+    }
+
+    /**
+     * Adds a panel slide listener called according to the given mode. Listeners that are not
+     * {@link DeliveryMode#IMMEDIATE} are never called while the panel is being dragged or
+     * settled, so they do not take time from the gesture.
+     *
+     * @param listener
+     * @param mode     When the listener is called
+     */
+    public void addPanelSlideListener(PanelSlideListener listener, DeliveryMode mode) {
+        if (mode == null) {
+            throw new IllegalArgumentException("Delivery mode cannot be null");
+        }
+        mListenerDispatcher.addSlideListener(listener, mode);
+    }
+
+    /**
+     * Adds a listener receiving the panel events on the given executor. The events of each frame
+     * are handed to the executor on the next animation frame, slide events being conflated to
+     * the latest position.
+     *
+     * @param listener
+     * @param executor The executor running the listener
+     */
+    public void addPanelEventListener(PanelEventListener listener, Executor executor) {
+        if (executor == null) {
+            throw new IllegalArgumentException("Executor cannot be null");
         }
+        mListenerDispatcher.addEventListener(listener, executor);
+    }
+
+    /**
+     * Removes a panel event listener
+     *
+     * @param listener
+     */
+    public void removePanelEventListener(PanelEventListener listener) {
+        mListenerDispatcher.removeEventListener(listener);
+    }
+
+    /**
+     * Adds a panel slide listener held by a weak reference. The listener stops being called once
+     * it is garbage collected, so the caller must keep a reference to it for as long as needed.
+     *
+     * @param listener
+     */
+    public void addWeakPanelSlideListener(PanelSlideListener listener) {
+        mListenerDispatcher.addScopedSlideListener(listener, null);
+    }
+
+    /**
+     * Adds a panel slide listener that is removed when the given view is detached from its
+     * window, e.g. the view of the fragment registering it. Before API 12 the listener is held
+     * by a weak reference instead.
+     *
+     * @param listener
+     * @param scope    The view bounding the registration
+     */
+    public void addScopedPanelSlideListener(PanelSlideListener listener, View scope) {
+        if (scope == null) {
+            throw new IllegalArgumentException("Scope view cannot be null");
+        }
+        mListenerDispatcher.addScopedSlideListener(listener, scope);
+    }
+
+    /**
+     * @return The number of registered listeners of all kinds that are still alive. Intended for
+     * debugging leaks.
+     */
+    public int getLiveListenerCount() {
+        return mListenerDispatcher.getLiveListenerCount();
+    }
+
+    /**
+     * Adds a listener receiving the panel position on every slide, without the panel view
+     *
+     * @param listener
+     */
+    public void addPanelSlideOffsetListener(PanelSlideOffsetListener listener) {
+        mListenerDispatcher.addOffsetListener(listener);
+    }
+
+    /**
+     * Removes a panel slide offset listener
+     *
+     * @param listener
+     */
+    public void removePanelSlideOffsetListener(PanelSlideOffsetListener listener) {
+        mListenerDispatcher.removeOffsetListener(listener);
     }
 
     /**
@@ -526,6 +1313,49 @@ public class SlidingUpPanelLayout extends ViewGroup {
         mFadeOnClickListener = listener;
     }
 
+    /**
+     * Set a header view of the panel that is measured alone while the panel is collapsed. Content
+     * changes in the panel then only measure and lay out the header again, and the rest of the
+     * panel keeps its last measurement and position until the panel is dragged or opened with
+     * {@link #setPanelState(PanelState)}. The header must be a direct child of the panel and is
+     * measured the way a FrameLayout, or a vertical LinearLayout its first child, measures it;
+     * otherwise the whole panel is measured. The first measure of the panel is always complete.
+     * Use null to always measure the whole panel.
+     *
+     * @param headerView A child of the panel, usually the part visible when collapsed
+     */
+    public void setPanelHeaderView(View headerView) {
+        mPanelHeaderView = headerView;
+        if (headerView == null && mPanelBodyStale) {
+            forceStalePanelLayout();
+            requestLayout();
+        }
+    }
+
+    /**
+     * @return The header view measured alone while the panel is collapsed, or null
+     */
+    public View getPanelHeaderView() {
+        return mPanelHeaderView;
+    }
+
+    /**
+     * Declare the height of the expanded panel, used for the slide range while only the header
+     * of the panel is measured. By default the height of the last complete measure is used.
+     *
+     * @param height A height in pixels, or 0 to use the measured height
+     */
+    public void setExpandedPanelHeight(int height) {
+        if (height < 0) {
+            throw new IllegalArgumentException("Expanded panel height must be positive");
+        }
+        mExpandedPanelHeight = height;
+        if (mPanelBodyStale) {
+            updateGeometry();
+            requestLayout();
+        }
+    }
+
     /**
      * Set the draggable view portion. Use to null, to allow the whole panel to be draggable
      *
@@ -560,23 +1390,45 @@ public class SlidingUpPanelLayout extends ViewGroup {
     }
 
     /**
-     * Set the draggable view portion. Use to null, to allow the whole panel to be draggable
+     * Set the draggable view portion. Use to null, to allow the whole panel to be draggable
+     *
+     * @param dragViewResId The resource ID of the new drag view
+     */
+    public void setDragView(int dragViewResId) {
+        mDragViewResId = dragViewResId;
+        setDragView(findViewById(dragViewResId));
+    }
+
+    /**
+     * Set the scrollable child of the sliding layout. If set, scrolling will be transfered between
+     * the panel and the view when necessary. This replaces all the scrollable views previously set
+     * or added.
+     *
+     * @param scrollableView The scrollable view
+     */
+    public void setScrollableView(View scrollableView) {
+        mScrollableViews.clear();
+        mScrollableViews.add(scrollableView);
+    }
+
+    /**
+     * Add a scrollable descendant of the sliding panel. Scrolling will be transfered between the
+     * panel and the innermost added view under the initial touch when necessary.
      *
-     * @param dragViewResId The resource ID of the new drag view
+     * @param scrollableView The scrollable view
      */
-    public void setDragView(int dragViewResId) {
-        mDragViewResId = dragViewResId;
-        setDragView(findViewById(dragViewResId));
+    public void addScrollableView(View scrollableView) {
+        mScrollableViews.add(scrollableView);
     }
 
     /**
-     * Set the scrollable child of the sliding layout. If set, scrolling will be transfered between
-     * the panel and the view when necessary
+     * Remove a scrollable view added with {@link #addScrollableView(View)} or
+     * {@link #setScrollableView(View)}.
      *
      * @param scrollableView The scrollable view
      */
-    public void setScrollableView(View scrollableView) {
-        mScrollableView = scrollableView;
+    public void removeScrollableView(View scrollableView) {
+        mScrollableViews.remove(scrollableView);
     }
 
     /**
@@ -596,11 +1448,23 @@ public class SlidingUpPanelLayout extends ViewGroup {
     public void setAnchorPoint(float anchorPoint) {
         if (anchorPoint > 0 && anchorPoint <= 1) {
             mAnchorPoint = anchorPoint;
+            mGeometry.setAnchorPoint(anchorPoint);
             mFirstLayout = true;
             requestLayout();
         }
     }
 
+    /**
+     * Start a configuration transaction. The changes made on the returned editor are validated
+     * and applied together by {@link Editor#apply()}, with at most one layout pass, and without
+     * resetting the current state of the panel.
+     *
+     * @return A new editor for this layout
+     */
+    public Editor edit() {
+        return new Editor();
+    }
+
     /**
      * Gets the currently set anchor point
      *
@@ -644,19 +1508,23 @@ public class SlidingUpPanelLayout extends ViewGroup {
 
 
     void dispatchOnPanelSlide(View panel) {
-        synchronized (mPanelSlideListeners) {
-            for (PanelSlideListener l : mPanelSlideListeners) {
-                l.onPanelSlide(panel, mSlideOffset);
-            }
+        final boolean traced = PanelTrace.begin(PanelTrace.DISPATCH_SLIDE);
+        try {
+            mWorkCounters.slideDispatches++;
+            mListenerDispatcher.dispatchSlide(panel, mPanelTop, mSlideOffset);
+        } finally {
+            PanelTrace.end(traced);
         }
     }
 
 
     void dispatchOnPanelStateChanged(View panel, PanelState previousState, PanelState newState) {
-        synchronized (mPanelSlideListeners) {
-            for (PanelSlideListener l : mPanelSlideListeners) {
-                l.onPanelStateChanged(panel, previousState, newState);
-            }
+        final boolean traced = PanelTrace.begin(PanelTrace.DISPATCH_STATE_CHANGED);
+        try {
+            mWorkCounters.stateDispatches++;
+            mListenerDispatcher.dispatchStateChanged(panel, previousState, newState);
+        } finally {
+            PanelTrace.end(traced);
         }
         sendAccessibilityEvent(AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED);
     }
@@ -693,13 +1561,17 @@ public class SlidingUpPanelLayout extends ViewGroup {
         } else {
             vis = VISIBLE;
         }
-        child.setVisibility(vis);
+        if (child.getVisibility() != vis) {
+            mWorkCounters.visibilityChanges++;
+            child.setVisibility(vis);
+        }
     }
 
     void setAllChildrenVisible() {
         for (int i = 0, childCount = getChildCount(); i < childCount; i++) {
             final View child = getChildAt(i);
             if (child.getVisibility() == INVISIBLE) {
+                mWorkCounters.visibilityChanges++;
                 child.setVisibility(VISIBLE);
             }
         }
@@ -714,16 +1586,37 @@ public class SlidingUpPanelLayout extends ViewGroup {
     protected void onAttachedToWindow() {
         super.onAttachedToWindow();
         mFirstLayout = true;
+        getViewTreeObserver().addOnScrollChangedListener(mScrollChangedListener);
     }
 
     @Override
     protected void onDetachedFromWindow() {
         super.onDetachedFromWindow();
         mFirstLayout = true;
+        getViewTreeObserver().removeOnScrollChangedListener(mScrollChangedListener);
+        mFrameStatsCollector.stop();
+        if (mGestureTelemetry != null) {
+            mGestureTelemetry.flush();
+        }
+        if (mPanelHeightAnimating) {
+            // Jump to the end of the animation
+            mPanelHeightAnimating = false;
+            removeCallbacks(mPanelHeightAnimationRunnable);
+            mPanelHeight = mPanelHeightAnimationTo;
+        }
     }
 
     @Override
     protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        final boolean traced = PanelTrace.begin(PanelTrace.ON_MEASURE);
+        try {
+            onMeasureInternal(widthMeasureSpec, heightMeasureSpec);
+        } finally {
+            PanelTrace.end(traced);
+        }
+    }
+
+    private void onMeasureInternal(int widthMeasureSpec, int heightMeasureSpec) {
         final int widthMode = MeasureSpec.getMode(widthMeasureSpec);
         final int widthSize = MeasureSpec.getSize(widthMeasureSpec);
         final int heightMode = MeasureSpec.getMode(heightMeasureSpec);
@@ -741,6 +1634,8 @@ public class SlidingUpPanelLayout extends ViewGroup {
             throw new IllegalStateException("Sliding up panel layout must have exactly 2 children!");
         }
 
+        mMeasurePassCount++;
+
         mMainView = getChildAt(0);
         mSlideableView = getChildAt(1);
         if (mDragView == null) {
@@ -801,18 +1696,270 @@ public class SlidingUpPanelLayout extends ViewGroup {
                 childHeightSpec = MeasureSpec.makeMeasureSpec(height, MeasureSpec.EXACTLY);
             }
 
-            child.measure(childWidthSpec, childHeightSpec);
-
+            if (child == mSlideableView && mPanelDormant && mChildHeightMeasureSpecs[i] != 0) {
+                // The hidden panel keeps its last measurement until it is shown again
+                continue;
+            }
+            if (childWidthSpec == mChildWidthMeasureSpecs[i]
+                    && childHeightSpec == mChildHeightMeasureSpecs[i]
+                    && !isLayoutRequested(child)) {
+                // Nothing changed since the last measure
+                continue;
+            }
             if (child == mSlideableView) {
-                mSlideRange = mSlideableView.getMeasuredHeight() - mPanelHeight;
+                if (childWidthSpec == mChildWidthMeasureSpecs[i]
+                        && childHeightSpec == mChildHeightMeasureSpecs[i] && canMeasureHeaderOnly()) {
+                    // Only the content changed and only the header is visible
+                    measurePanelHeader(childWidthSpec, childHeightSpec);
+                    continue;
+                }
+                forceStalePanelLayout();
             }
+            if (child == mMainView) {
+                // The main view has to be laid out again as well
+                mPanelOnlyLayoutRequested = false;
+            }
+            mChildWidthMeasureSpecs[i] = childWidthSpec;
+            mChildHeightMeasureSpecs[i] = childHeightSpec;
+            mChildMeasureCounts[i]++;
+
+            child.measure(childWidthSpec, childHeightSpec);
         }
 
         setMeasuredDimension(widthSize, heightSize);
+
+        // The panel height may have changed even if the panel was not re-measured
+        updateGeometry();
+    }
+
+    /**
+     * @return true if the collapsed panel can be measured by its header alone, i.e. it rests
+     * collapsed and is not settling to another state
+     */
+    private boolean canMeasureHeaderOnly() {
+        return mPanelHeaderView != null && mSlideState == PanelState.COLLAPSED
+                && mDragHelper.getViewDragState() == ViewDragHelper.STATE_IDLE
+                && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2
+                && mChildHeightMeasureSpecs[1] != 0 && mPanelHeaderView.getParent() == mSlideableView;
+    }
+
+    /**
+     * Measure the header of the panel alone from the specs of the panel, keeping the measurement
+     * of the rest of the panel. The header is laid out with its new size in the layout pass.
+     */
+    private void measurePanelHeader(int panelWidthSpec, int panelHeightSpec) {
+        final View header = mPanelHeaderView;
+        int horizontalUsed = mSlideableView.getPaddingLeft() + mSlideableView.getPaddingRight();
+        int verticalUsed = mSlideableView.getPaddingTop() + mSlideableView.getPaddingBottom();
+        final ViewGroup.LayoutParams lp = header.getLayoutParams();
+        if (lp instanceof MarginLayoutParams) {
+            final MarginLayoutParams mlp = (MarginLayoutParams) lp;
+            horizontalUsed += mlp.leftMargin + mlp.rightMargin;
+            verticalUsed += mlp.topMargin + mlp.bottomMargin;
+        }
+        header.measure(getChildMeasureSpec(panelWidthSpec, horizontalUsed, lp.width),
+                getChildMeasureSpec(panelHeightSpec, verticalUsed, lp.height));
+        mPanelBodyStale = true;
+        mPanelHeaderLayoutPending = true;
+    }
+
+    /**
+     * Lay out the header measured alone at its current position. Laying the panel out without
+     * measuring it does not lay out its children, but clears its layout request so that the next
+     * requests from the panel content reach this layout again.
+     */
+    private void layoutPanelHeader() {
+        if (!mPanelHeaderLayoutPending) {
+            return;
+        }
+        mPanelHeaderLayoutPending = false;
+        final View header = mPanelHeaderView;
+        if (header == null || header.getParent() != mSlideableView) {
+            return;
+        }
+        final int left = header.getLeft();
+        final int top = header.getTop();
+        header.layout(left, top, left + header.getMeasuredWidth(), top + header.getMeasuredHeight());
+    }
+
+    /**
+     * Before measuring a panel whose body was skipped, make sure every view in it is measured
+     * again: the views that requested a layout meanwhile were not measured since.
+     */
+    private void forceStalePanelLayout() {
+        if (mPanelBodyStale) {
+            mPanelBodyStale = false;
+            mPanelHeaderLayoutPending = false;
+            forceLayoutTree(mSlideableView);
+        }
+    }
+
+    private static void forceLayoutTree(View view) {
+        view.forceLayout();
+        if (view instanceof ViewGroup) {
+            final ViewGroup group = (ViewGroup) view;
+            for (int i = 0, count = group.getChildCount(); i < count; i++) {
+                forceLayoutTree(group.getChildAt(i));
+            }
+        }
+    }
+
+    /**
+     * Measure and lay out the whole panel at its current position if only its header was
+     * measured, so that it has its full height before it leaves the collapsed state.
+     */
+    private void ensurePanelMeasured() {
+        if (!mPanelBodyStale || mSlideableView == null) {
+            return;
+        }
+        forceStalePanelLayout();
+        mChildMeasureCounts[1]++;
+        mSlideableView.measure(mChildWidthMeasureSpecs[1], mChildHeightMeasureSpecs[1]);
+        updateGeometry();
+        final int top = mSlideableView.getTop();
+        final int left = mSlideableView.getLeft();
+        mSlideableView.layout(left, top, left + mSlideableView.getMeasuredWidth(),
+                top + mSlideableView.getMeasuredHeight());
+        mScrollableViews.invalidate();
+        mScrollableDescendants.invalidate();
+    }
+
+    /**
+     * Recompute the pixel positions of the panel from the current measurements.
+     */
+    private void updateGeometry() {
+        final int slidingViewHeight = mSlideableView == null ? 0
+                : mPanelBodyStale && mExpandedPanelHeight > 0 ? mExpandedPanelHeight
+                : mSlideableView.getMeasuredHeight();
+        final int panelHeight = mPanelHeightAnimating ? mAnimatedPanelHeight : mPanelHeight;
+        final int collapsedTop = mGeometry.getCollapsedTop();
+        final int slideRange = mGeometry.getSlideRange();
+        mGeometry.update(mIsSlidingUp, getMeasuredHeight(), getPaddingTop(), getPaddingBottom(),
+                panelHeight, slidingViewHeight, mAnchorPoint);
+        if (mGeometry.getCollapsedTop() != collapsedTop || mGeometry.getSlideRange() != slideRange) {
+            // The same panel top now has another slide offset
+            mListenerDispatcher.resetSlidePosition();
+        }
+    }
+
+    /**
+     * @return The number of measure passes of this layout since the last
+     * {@link #resetMeasureCounters()}
+     */
+    public int getMeasurePassCount() {
+        return mMeasurePassCount;
+    }
+
+    /**
+     * @return The number of times the main view was measured since the last
+     * {@link #resetMeasureCounters()}. Measure passes where its inputs did not change skip it.
+     */
+    public int getMainViewMeasureCount() {
+        return mChildMeasureCounts[0];
+    }
+
+    /**
+     * @return The number of times the sliding panel was measured since the last
+     * {@link #resetMeasureCounters()}. Measure passes where its inputs did not change skip it.
+     */
+    public int getPanelMeasureCount() {
+        return mChildMeasureCounts[1];
+    }
+
+    /**
+     * Reset the measure counters to zero.
+     */
+    public void resetMeasureCounters() {
+        mMeasurePassCount = 0;
+        mChildMeasureCounts[0] = 0;
+        mChildMeasureCounts[1] = 0;
+        mPanelRelayoutCount = 0;
+    }
+
+    /**
+     * @return true if the view requested a layout since it was last laid out, or if this cannot be
+     * determined
+     */
+    private static boolean isLayoutRequested(View view) {
+        return Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN_MR2 || view.isLayoutRequested();
+    }
+
+    @Override
+    public void requestLayout() {
+        if (mListenerWatchdog != null) {
+            mListenerWatchdog.onLayoutRequested();
+        }
+        mPanelOnlyLayoutRequested = isPanelLayoutRequest();
+        super.requestLayout();
+    }
+
+    /**
+     * @return true if the layout request being made comes up from the content of a wrap_content
+     * panel alone, so that the main view can keep its measurement and layout
+     */
+    private boolean isPanelLayoutRequest() {
+        if (!mIncrementalPanelLayoutEnabled || mFirstLayout || mPanelDormant
+                || Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN_MR2
+                || mSlideableView == null || mMainView == null
+                || mSlideableView.getVisibility() == GONE
+                || (!mIsSlidingUp && !mOverlayContent) || isInLayout()) {
+            return false;
+        }
+        // A child only forwards its request while this layout has none pending, so a request made
+        // while one is pending comes from this layout itself, e.g. a setter or a padding change
+        if (isLayoutRequested()) {
+            return false;
+        }
+        final LayoutParams lp = (LayoutParams) mSlideableView.getLayoutParams();
+        return lp.height == LayoutParams.WRAP_CONTENT
+                && mSlideableView.isLayoutRequested() && !mMainView.isLayoutRequested();
+    }
+
+    /**
+     * Lay out the panel alone, after a layout pass that measured the panel but not the main view.
+     */
+    private void layoutPanelOnly() {
+        mPanelRelayoutCount++;
+        final int oldTop = mSlideableView.getTop();
+        final int left = mSlideableView.getLeft();
+        mSlideableView.layout(left, oldTop, left + mSlideableView.getMeasuredWidth(),
+                oldTop + mSlideableView.getMeasuredHeight());
+        layoutPanelHeader();
+        mScrollableViews.invalidate();
+        mScrollableDescendants.invalidate();
+
+        if (mSlideState == PanelState.DRAGGING) {
+            // Keep the panel under the finger, only its offset changes with the range
+            mPanelTop = oldTop;
+            mSlideOffset = computeSlideOffset(oldTop);
+            applyParallaxForCurrentSlideOffset();
+            publishPanelPosition();
+        } else {
+            final int newTop = getRestingPanelTop();
+            if (newTop != oldTop) {
+                smoothSlideToTop(newTop);
+            }
+        }
     }
 
     @Override
     protected void onLayout(boolean changed, int l, int t, int r, int b) {
+        final boolean traced = PanelTrace.begin(PanelTrace.ON_LAYOUT);
+        try {
+            onLayoutInternal(changed);
+        } finally {
+            PanelTrace.end(traced);
+        }
+    }
+
+    private void onLayoutInternal(boolean changed) {
+        mWorkCounters.layoutPasses++;
+        if (mPanelOnlyLayoutRequested && !changed && !mFirstLayout) {
+            mPanelOnlyLayoutRequested = false;
+            layoutPanelOnly();
+            return;
+        }
+        mPanelOnlyLayoutRequested = false;
         final int paddingLeft = getPaddingLeft();
         final int paddingTop = getPaddingTop();
 
@@ -827,14 +1974,17 @@ public class SlidingUpPanelLayout extends ViewGroup {
                     mSlideOffset = mAnchorPoint;
                     break;
                 case HIDDEN:
-                    int newTop = computePanelTopPosition(0.0f) + (mIsSlidingUp ? +mPanelHeight : -mPanelHeight);
-                    mSlideOffset = computeSlideOffset(newTop);
+                    mSlideOffset = mGeometry.computeSlideOffset(mGeometry.getHiddenTop());
                     break;
                 default:
                     mSlideOffset = 0.f;
                     break;
             }
         }
+        // Keep the integer position while the panel moves, so that a layout does not shift it
+        if (mFirstLayout || mSlideState != PanelState.DRAGGING) {
+            mPanelTop = getRestingPanelTop();
+        }
 
         for (int i = 0; i < childCount; i++) {
             final View child = getChildAt(i);
@@ -844,17 +1994,20 @@ public class SlidingUpPanelLayout extends ViewGroup {
             if (child.getVisibility() == GONE && (i == 0 || mFirstLayout)) {
                 continue;
             }
+            if (child == mSlideableView && mPanelDormant && !mFirstLayout) {
+                continue;
+            }
 
             final int childHeight = child.getMeasuredHeight();
             int childTop = paddingTop;
 
             if (child == mSlideableView) {
-                childTop = computePanelTopPosition(mSlideOffset);
+                childTop = mPanelTop;
             }
 
             if (!mIsSlidingUp) {
                 if (child == mMainView && !mOverlayContent) {
-                    childTop = computePanelTopPosition(mSlideOffset) + mSlideableView.getMeasuredHeight();
+                    childTop = mPanelTop + mSlideableView.getMeasuredHeight();
                 }
             }
             final int childBottom = childTop + childHeight;
@@ -863,28 +2016,60 @@ public class SlidingUpPanelLayout extends ViewGroup {
 
             child.layout(childLeft, childTop, childRight, childBottom);
         }
+        layoutPanelHeader();
 
         if (mFirstLayout) {
             updateObscuredViewVisibility();
+            mPanelDormant = mSlideState == PanelState.HIDDEN;
         }
         applyParallaxForCurrentSlideOffset();
+        publishPanelPosition();
+        mScrollableViews.invalidate();
+        mScrollableDescendants.invalidate();
 
         mFirstLayout = false;
     }
 
+    /**
+     * @return the top of the panel for its current resting state, looked up in the geometry table
+     */
+    private int getRestingPanelTop() {
+        switch (mSlideState) {
+            case EXPANDED:
+                return mGeometry.getExpandedTop();
+            case COLLAPSED:
+                return mGeometry.getCollapsedTop();
+            case HIDDEN:
+                return mGeometry.getHiddenTop();
+            default:
+                return mGeometry.computeTop(mSlideOffset);
+        }
+    }
+
     @Override
     protected void onSizeChanged(int w, int h, int oldw, int oldh) {
         super.onSizeChanged(w, h, oldw, oldh);
-        // Recalculate sliding panes and their details
-        if (h != oldh) {
-            mFirstLayout = true;
-        }
+        // Recalculate sliding panes and their details. Once laid out, the panel keeps its state
+        // and the next layout moves it to the position of that state in the new geometry.
+        updateGeometry();
     }
 
     @Override
     public boolean onInterceptTouchEvent(MotionEvent ev) {
+        final boolean traced = PanelTrace.begin(PanelTrace.ON_INTERCEPT_TOUCH_EVENT);
+        try {
+            return interceptTouchEvent(ev);
+        } finally {
+            PanelTrace.end(traced);
+        }
+    }
+
+    private boolean interceptTouchEvent(MotionEvent ev) {
+        if (mPanelDormant) {
+            return false;
+        }
         // If the scrollable view is handling touch, never intercept
-        if (mIsScrollableViewHandlingTouch || !isTouchEnabled()) {
+        if (isScrollableViewHandlingTouch() || !isTouchEnabled()) {
             mDragHelper.abort();
             return false;
         }
@@ -957,6 +2142,24 @@ public class SlidingUpPanelLayout extends ViewGroup {
 
     @Override
     public boolean dispatchTouchEvent(MotionEvent ev) {
+        final boolean traced = PanelTrace.begin(PanelTrace.DISPATCH_TOUCH_EVENT);
+        try {
+            final boolean result = dispatchTouchEventToPanel(ev);
+            if (PanelTrace.sEnabled && mSlideState == PanelState.DRAGGING
+                    && mDragHelper.getViewDragState() == ViewDragHelper.STATE_DRAGGING
+                    && MotionEventCompat.getActionMasked(ev) == MotionEvent.ACTION_MOVE) {
+                mTouchLatencyTracker.onTouchApplied(ev.getEventTime());
+            }
+            return result;
+        } finally {
+            PanelTrace.end(traced);
+        }
+    }
+
+    private boolean dispatchTouchEventToPanel(MotionEvent ev) {
+        if (mPanelDormant) {
+            return super.dispatchTouchEvent(ev);
+        }
         final int action = MotionEventCompat.getActionMasked(ev);
 
         if (!isEnabled() || !isTouchEnabled() || (mIsUnableToDrag && action != MotionEvent.ACTION_DOWN)) {
@@ -967,15 +2170,23 @@ public class SlidingUpPanelLayout extends ViewGroup {
         final float y = ev.getY();
 
         if (action == MotionEvent.ACTION_DOWN) {
-            mIsScrollableViewHandlingTouch = false;
+            mTouchedScrollable = mSlideableView == null ? null : mScrollableViews.findEntryUnder(mSlideableView,
+                    (int) ev.getX() - mSlideableView.getLeft(), (int) y - mSlideableView.getTop());
+            if (mTouchedScrollable != null) {
+                mTouchedScrollable.handlingTouch = false;
+            }
+            if (mGestureTelemetry != null) {
+                mGestureTelemetry.onTouchDown();
+            }
             mPrevMotionY = y;
         } else if (action == MotionEvent.ACTION_MOVE) {
             float dy = y - mPrevMotionY;
             mPrevMotionY = y;
 
-            // If the scroll view isn't under the touch, pass the
+            // If no scroll view is under the touch, pass the
             // event along to the dragView.
-            if (!isViewUnder(mScrollableView, (int) mInitialMotionX, (int) mInitialMotionY)) {
+            final ScrollableViewIndex.Entry scrollable = mTouchedScrollable;
+            if (scrollable == null) {
                 return super.dispatchTouchEvent(ev);
             }
 
@@ -983,15 +2194,18 @@ public class SlidingUpPanelLayout extends ViewGroup {
             if (dy * (mIsSlidingUp ? 1 : -1) > 0) { // Collapsing
                 // Is the child less than fully scrolled?
                 // Then let the child handle it.
-                if (mScrollableViewHelper.getScrollableViewScrollPosition(mScrollableView, mIsSlidingUp) > 0) {
-                    mIsScrollableViewHandlingTouch = true;
+                if (mScrollableViewHelper.getScrollableViewScrollPosition(scrollable.view, mIsSlidingUp) > 0) {
+                    scrollable.handlingTouch = true;
                     return super.dispatchTouchEvent(ev);
                 }
 
                 // Was the child handling the touch previously?
                 // Then we need to rejigger things so that the
                 // drag panel gets a proper down event.
-                if (mIsScrollableViewHandlingTouch) {
+                if (scrollable.handlingTouch) {
+                    if (mGestureTelemetry != null) {
+                        mGestureTelemetry.onScrollableHandoff();
+                    }
                     // Send an 'UP' event to the child.
                     MotionEvent up = MotionEvent.obtain(ev);
                     up.setAction(MotionEvent.ACTION_CANCEL);
@@ -1003,31 +2217,34 @@ public class SlidingUpPanelLayout extends ViewGroup {
                     ev.setAction(MotionEvent.ACTION_DOWN);
                 }
 
-                mIsScrollableViewHandlingTouch = false;
+                scrollable.handlingTouch = false;
                 return this.onTouchEvent(ev);
             } else if (dy * (mIsSlidingUp ? 1 : -1) < 0) { // Expanding
                 // Is the panel less than fully expanded?
                 // Then we'll handle the drag here.
                 if (mSlideOffset < 1.0f) {
-                    mIsScrollableViewHandlingTouch = false;
+                    scrollable.handlingTouch = false;
                     return this.onTouchEvent(ev);
                 }
 
                 // Was the panel handling the touch previously?
                 // Then we need to rejigger things so that the
                 // child gets a proper down event.
-                if (!mIsScrollableViewHandlingTouch && mDragHelper.isDragging()) {
+                if (!scrollable.handlingTouch && mDragHelper.isDragging()) {
+                    if (mGestureTelemetry != null) {
+                        mGestureTelemetry.onScrollableHandoff();
+                    }
                     mDragHelper.cancel();
                     ev.setAction(MotionEvent.ACTION_DOWN);
                 }
 
-                mIsScrollableViewHandlingTouch = true;
+                scrollable.handlingTouch = true;
                 return super.dispatchTouchEvent(ev);
             }
         } else if (action == MotionEvent.ACTION_UP) {
             // If the scrollable view was handling the touch and we receive an up
             // we want to clear any previous dragging state so we don't intercept a touch stream accidentally
-            if (mIsScrollableViewHandlingTouch) {
+            if (isScrollableViewHandlingTouch()) {
                 mDragHelper.setDragState(ViewDragHelper.STATE_IDLE);
             }
         }
@@ -1036,6 +2253,10 @@ public class SlidingUpPanelLayout extends ViewGroup {
         return super.dispatchTouchEvent(ev);
     }
 
+    private boolean isScrollableViewHandlingTouch() {
+        return mTouchedScrollable != null && mTouchedScrollable.handlingTouch;
+    }
+
     private boolean isViewUnder(View view, int x, int y) {
         if (view == null) return false;
         int[] viewLocation = new int[2];
@@ -1052,26 +2273,14 @@ public class SlidingUpPanelLayout extends ViewGroup {
      * Computes the top position of the panel based on the slide offset.
      */
     private int computePanelTopPosition(float slideOffset) {
-        int slidingViewHeight = mSlideableView != null ? mSlideableView.getMeasuredHeight() : 0;
-        int slidePixelOffset = (int) (slideOffset * mSlideRange);
-        // Compute the top of the panel if its collapsed
-        return mIsSlidingUp
-                ? getMeasuredHeight() - getPaddingBottom() - mPanelHeight - slidePixelOffset
-                : getPaddingTop() - slidingViewHeight + mPanelHeight + slidePixelOffset;
+        return mGeometry.computeTop(slideOffset);
     }
 
     /*
      * Computes the slide offset based on the top position of the panel
      */
     private float computeSlideOffset(int topPosition) {
-        // Compute the panel top position if the panel is collapsed (offset 0)
-        final int topBoundCollapsed = computePanelTopPosition(0);
-
-        // Determine the new slide offset based on the collapsed top position and the new required
-        // top position
-        return (mIsSlidingUp
-                ? (float) (topBoundCollapsed - topPosition) / mSlideRange
-                : (float) (topPosition - topBoundCollapsed) / mSlideRange);
+        return mGeometry.computeSlideOffset(topPosition);
     }
 
     /**
@@ -1101,22 +2310,27 @@ public class SlidingUpPanelLayout extends ViewGroup {
             setPanelStateInternal(state);
         } else {
             if (mSlideState == PanelState.HIDDEN) {
+                // Wake the panel up; it is only re-measured if its specs or content changed
+                mPanelDormant = false;
                 mSlideableView.setVisibility(View.VISIBLE);
                 requestLayout();
             }
+            if (state != PanelState.COLLAPSED && state != PanelState.HIDDEN) {
+                // Slide to the top of the fully measured panel
+                ensurePanelMeasured();
+            }
             switch (state) {
                 case ANCHORED:
-                    smoothSlideTo(mAnchorPoint, 0);
+                    smoothSlideToTop(mGeometry.getAnchoredTop());
                     break;
                 case COLLAPSED:
-                    smoothSlideTo(0, 0);
+                    smoothSlideToTop(mGeometry.getCollapsedTop());
                     break;
                 case EXPANDED:
-                    smoothSlideTo(1.0f, 0);
+                    smoothSlideToTop(mGeometry.getExpandedTop());
                     break;
                 case HIDDEN:
-                    int newTop = computePanelTopPosition(0.0f) + (mIsSlidingUp ? +mPanelHeight : -mPanelHeight);
-                    smoothSlideTo(computeSlideOffset(newTop), 0);
+                    smoothSlideToTop(mGeometry.getHiddenTop());
                     break;
             }
         }
@@ -1126,11 +2340,24 @@ public class SlidingUpPanelLayout extends ViewGroup {
         if (mSlideState == state) return;
         PanelState oldState = mSlideState;
         mSlideState = state;
+        if (state != PanelState.HIDDEN) {
+            mPanelDormant = false;
+        }
+        if (state == PanelState.DRAGGING) {
+            mFrameStatsCollector.start();
+        } else if (oldState == PanelState.DRAGGING) {
+            mFrameStatsCollector.stop();
+        }
+        publishPanelPosition();
         dispatchOnPanelStateChanged(this, oldState, state);
     }
 
+    private void publishPanelPosition() {
+        mOffsetSource.publish(mPanelTop, mSlideOffset, mSlideState);
+    }
+
     /**
-     * Update the parallax based on the current slide offset.
+     * Update the parallax and the offset bindings based on the current slide offset.
      */
     @SuppressLint("NewApi")
     private void applyParallaxForCurrentSlideOffset() {
@@ -1138,6 +2365,9 @@ public class SlidingUpPanelLayout extends ViewGroup {
             int mainViewOffset = getCurrentParallaxOffset();
             ViewCompat.setTranslationY(mMainView, mainViewOffset);
         }
+        if (mOffsetBindings != null) {
+            mOffsetBindings.apply(mSlideOffset);
+        }
     }
 
     private void onPanelDragged(int newTop) {
@@ -1146,8 +2376,10 @@ public class SlidingUpPanelLayout extends ViewGroup {
         }
         setPanelStateInternal(PanelState.DRAGGING);
         // Recompute the slide offset based on the new top position
+        mPanelTop = newTop;
         mSlideOffset = computeSlideOffset(newTop);
         applyParallaxForCurrentSlideOffset();
+        publishPanelPosition();
         // Dispatch the slide event
         dispatchOnPanelSlide(mSlideableView);
         // If the slide offset is negative, and overlay is not on, we need to increase the
@@ -1161,15 +2393,30 @@ public class SlidingUpPanelLayout extends ViewGroup {
             if (lp.height == defaultHeight) {
                 lp.height = LayoutParams.MATCH_PARENT;
             }
+            mWorkCounters.mainViewLayoutRequests++;
             mMainView.requestLayout();
         } else if (lp.height != LayoutParams.MATCH_PARENT && !mOverlayContent) {
             lp.height = LayoutParams.MATCH_PARENT;
+            mWorkCounters.mainViewLayoutRequests++;
             mMainView.requestLayout();
         }
     }
 
     @Override
     protected boolean drawChild(Canvas canvas, View child, long drawingTime) {
+        if (mPanelDormant) {
+            // Nothing covers the main view
+            return super.drawChild(canvas, child, drawingTime);
+        }
+        final boolean traced = PanelTrace.begin(PanelTrace.DRAW_CHILD);
+        try {
+            return drawChildInternal(canvas, child, drawingTime);
+        } finally {
+            PanelTrace.end(traced);
+        }
+    }
+
+    private boolean drawChildInternal(Canvas canvas, View child, long drawingTime) {
         boolean result;
         final int save = canvas.save(Canvas.CLIP_SAVE_FLAG);
 
@@ -1213,15 +2460,23 @@ public class SlidingUpPanelLayout extends ViewGroup {
      * @param velocity    initial velocity in case of fling, or 0.
      */
     boolean smoothSlideTo(float slideOffset, int velocity) {
+        return smoothSlideToTop(computePanelTopPosition(slideOffset));
+    }
+
+    /**
+     * Smoothly animate the panel to the given top position.
+     *
+     * @param panelTop position to animate to
+     */
+    private boolean smoothSlideToTop(int panelTop) {
         if (!isEnabled() || mSlideableView == null) {
             // Nothing to do.
             return false;
         }
 
-        int panelTop = computePanelTopPosition(slideOffset);
         if (mDragHelper.smoothSlideViewTo(mSlideableView, mSlideableView.getLeft(), panelTop)) {
             setAllChildrenVisible();
-            ViewCompat.postInvalidateOnAnimation(this);
+            postInvalidateOnAnimationCounted();
             return true;
         }
         return false;
@@ -1235,16 +2490,25 @@ public class SlidingUpPanelLayout extends ViewGroup {
                 return;
             }
 
-            ViewCompat.postInvalidateOnAnimation(this);
+            postInvalidateOnAnimationCounted();
         }
     }
 
     @Override
     public void draw(Canvas c) {
+        final boolean traced = PanelTrace.begin(PanelTrace.DRAW);
+        try {
+            drawInternal(c);
+        } finally {
+            PanelTrace.end(traced);
+        }
+    }
+
+    private void drawInternal(Canvas c) {
         super.draw(c);
 
         // draw the shadow
-        if (mShadowDrawable != null && mSlideableView != null) {
+        if (mShadowDrawable != null && mSlideableView != null && !mPanelDormant) {
             final int right = mSlideableView.getRight();
             final int top;
             final int bottom;
@@ -1259,6 +2523,111 @@ public class SlidingUpPanelLayout extends ViewGroup {
             mShadowDrawable.setBounds(left, top, right, bottom);
             mShadowDrawable.draw(c);
         }
+        if (mDebugOverlayEnabled) {
+            drawDebugOverlay(c);
+        }
+        if (PanelTrace.sEnabled) {
+            mTouchLatencyTracker.onDraw(SystemClock.uptimeMillis());
+        }
+    }
+
+    @Override
+    public void invalidate() {
+        if (mInvalidateOnAnimationPending) {
+            mInvalidateOnAnimationPending = false;
+        } else if (mWorkCounters != null) { // null when called by the View constructor
+            mWorkCounters.invalidations++;
+        }
+        super.invalidate();
+    }
+
+    /**
+     * Invalidate on the next animation frame, counted in the work counters like
+     * {@link #invalidate()}. Posts made before the frame are coalesced into one invalidation.
+     */
+    private void postInvalidateOnAnimationCounted() {
+        if (!mInvalidateOnAnimationPending) {
+            mInvalidateOnAnimationPending = true;
+            mWorkCounters.invalidations++;
+        }
+        ViewCompat.postInvalidateOnAnimation(this);
+    }
+
+    private void drawDebugOverlay(Canvas c) {
+        final Paint paint = mDebugOverlayPaint;
+        final float lineHeight = paint.getFontSpacing();
+        final float x = getPaddingLeft() + lineHeight / 2;
+        float y = getPaddingTop() + lineHeight;
+        paint.setColor(0xb0000000);
+        c.drawRect(getPaddingLeft(), getPaddingTop(), getWidth() - getPaddingRight(),
+                y + lineHeight * (DEBUG_OVERLAY_LINES - 1) + lineHeight / 2, paint);
+        paint.setColor(0xffffffff);
+
+        // The lines are built in a reused buffer, drawing the overlay does not allocate
+        final PanelWorkCounters counters = mWorkCounters;
+        final PanelFrameStats stats = mLastGestureStats;
+        final StringBuilder line = mDebugOverlayText;
+        line.append(mSlideState).append(" offset=");
+        appendDebugOverlayDecimal(line, mSlideOffset, 3);
+        line.append(" top=").append(mPanelTop);
+        y = drawDebugOverlayLine(c, x, y);
+        line.append("measures=").append(mMeasurePassCount).append(" main=").append(mChildMeasureCounts[0])
+                .append(" panel=").append(mChildMeasureCounts[1]).append(" layouts=").append(counters.layoutPasses);
+        y = drawDebugOverlayLine(c, x, y);
+        line.append("mainLayoutRequests=").append(counters.mainViewLayoutRequests)
+                .append(" invalidations=").append(counters.invalidations)
+                .append(" visibility=").append(counters.visibilityChanges);
+        y = drawDebugOverlayLine(c, x, y);
+        line.append("slides=").append(counters.slideDispatches).append(" states=").append(counters.stateDispatches)
+                .append(" moves=").append(counters.dragMoves).append(" settleFrames=").append(counters.settleFrames);
+        y = drawDebugOverlayLine(c, x, y);
+        if (stats == null) {
+            line.append("no gesture");
+        } else {
+            line.append("frames=").append(stats.getTotalFrames()).append(" janky=").append(stats.getJankyFrames())
+                    .append(" p90=").append(stats.getPercentile90()).append("ms max=");
+            appendDebugOverlayDecimal(line, stats.getMaxFrameMillis(), 1);
+            line.append("ms");
+        }
+        drawDebugOverlayLine(c, x, y);
+    }
+
+    /**
+     * Append a value with a fixed number of decimals. StringBuilder.append(float) allocates on
+     * older releases, ints never do.
+     */
+    private static void appendDebugOverlayDecimal(StringBuilder line, float value, int decimals) {
+        int scale = 1;
+        for (int i = 0; i < decimals; i++) {
+            scale *= 10;
+        }
+        final int scaled = Math.round(Math.abs(value) * scale);
+        if (value < 0 && scaled != 0) {
+            line.append('-');
+        }
+        line.append(scaled / scale).append('.');
+        final int fraction = scaled % scale;
+        for (int digits = scale / 10; digits > 1 && fraction < digits; digits /= 10) {
+            line.append('0');
+        }
+        line.append(fraction);
+    }
+
+    /**
+     * Draw the line built in {@link #mDebugOverlayText} and clear it.
+     *
+     * @return The baseline of the next line
+     */
+    private float drawDebugOverlayLine(Canvas c, float x, float y) {
+        final StringBuilder line = mDebugOverlayText;
+        final int length = line.length();
+        if (mDebugOverlayChars.length < length) {
+            mDebugOverlayChars = new char[length * 2];
+        }
+        line.getChars(0, length, mDebugOverlayChars, 0);
+        c.drawText(mDebugOverlayChars, 0, length, x, y, mDebugOverlayPaint);
+        line.setLength(0);
+        return y + mDebugOverlayPaint.getFontSpacing();
     }
 
     /**
@@ -1273,6 +2642,10 @@ public class SlidingUpPanelLayout extends ViewGroup {
      * @return true if child views of v can be scrolled by delta of dx.
      */
     protected boolean canScroll(View v, boolean checkV, int dx, int x, int y) {
+        if (v == this) {
+            // Only visit the cached scrollable candidates instead of the whole hierarchy
+            return mScrollableDescendants.canScroll(checkV, dx, 0, false, x, y);
+        }
         if (v instanceof ViewGroup) {
             final ViewGroup group = (ViewGroup) v;
             final int scrollX = v.getScrollX();
@@ -1334,22 +2707,167 @@ public class SlidingUpPanelLayout extends ViewGroup {
         super.onRestoreInstanceState(state);
     }
 
+    /**
+     * A set of configuration changes applied together, see {@link #edit()}.
+     */
+    public class Editor {
+        private static final int PANEL_HEIGHT = 1;
+        private static final int PARALLAX_OFFSET = 1 << 1;
+        private static final int ANCHOR_POINT = 1 << 2;
+        private static final int COVERED_FADE_COLOR = 1 << 3;
+        private static final int GRAVITY = 1 << 4;
+        private static final int SHADOW_HEIGHT = 1 << 5;
+
+        private int mChanges;
+        private int mNewPanelHeight;
+        private int mNewParallaxOffset;
+        private float mNewAnchorPoint;
+        private int mNewCoveredFadeColor;
+        private int mNewGravity;
+        private int mNewShadowHeight;
+
+        Editor() {
+        }
+
+        /**
+         * @see SlidingUpPanelLayout#setPanelHeight(int)
+         */
+        public Editor setPanelHeight(int val) {
+            mNewPanelHeight = val;
+            mChanges |= PANEL_HEIGHT;
+            return this;
+        }
+
+        /**
+         * @see SlidingUpPanelLayout#setParallaxOffset(int)
+         */
+        public Editor setParallaxOffset(int val) {
+            mNewParallaxOffset = val;
+            mChanges |= PARALLAX_OFFSET;
+            return this;
+        }
+
+        /**
+         * @see SlidingUpPanelLayout#setAnchorPoint(float)
+         */
+        public Editor setAnchorPoint(float anchorPoint) {
+            mNewAnchorPoint = anchorPoint;
+            mChanges |= ANCHOR_POINT;
+            return this;
+        }
+
+        /**
+         * @see SlidingUpPanelLayout#setCoveredFadeColor(int)
+         */
+        public Editor setCoveredFadeColor(int color) {
+            mNewCoveredFadeColor = color;
+            mChanges |= COVERED_FADE_COLOR;
+            return this;
+        }
+
+        /**
+         * @see SlidingUpPanelLayout#setGravity(int)
+         */
+        public Editor setGravity(int gravity) {
+            mNewGravity = gravity;
+            mChanges |= GRAVITY;
+            return this;
+        }
+
+        /**
+         * @see SlidingUpPanelLayout#setShadowHeight(int)
+         */
+        public Editor setShadowHeight(int val) {
+            mNewShadowHeight = val;
+            mChanges |= SHADOW_HEIGHT;
+            return this;
+        }
+
+        /**
+         * Apply all the changes. Values are validated like the matching setters of the layout do:
+         * an anchor point out of (0, 1] is ignored, and an invalid gravity throws before anything
+         * is applied. The layout is only requested if the panel height, anchor point or gravity
+         * changed; other changes only redraw the layout.
+         *
+         * @throws IllegalArgumentException if the gravity is neither top nor bottom
+         */
+        public void apply() {
+            if ((mChanges & GRAVITY) != 0 && mNewGravity != Gravity.TOP && mNewGravity != Gravity.BOTTOM) {
+                throw new IllegalArgumentException("gravity must be set to either top or bottom");
+            }
+
+            boolean geometryChanged = false;
+            boolean parallaxChanged = false;
+            boolean changed = false;
+            if ((mChanges & PANEL_HEIGHT) != 0) {
+                cancelPanelHeightAnimation();
+                if (mPanelHeight != mNewPanelHeight) {
+                    mPanelHeight = mNewPanelHeight;
+                    geometryChanged = true;
+                }
+            }
+            if ((mChanges & ANCHOR_POINT) != 0 && mNewAnchorPoint > 0 && mNewAnchorPoint <= 1
+                    && mAnchorPoint != mNewAnchorPoint) {
+                mAnchorPoint = mNewAnchorPoint;
+                if (mSlideState == PanelState.ANCHORED) {
+                    mSlideOffset = mAnchorPoint;
+                }
+                geometryChanged = true;
+            }
+            if ((mChanges & GRAVITY) != 0 && mIsSlidingUp != (mNewGravity == Gravity.BOTTOM)) {
+                mIsSlidingUp = mNewGravity == Gravity.BOTTOM;
+                geometryChanged = true;
+            }
+            if ((mChanges & PARALLAX_OFFSET) != 0 && mParallaxOffset != mNewParallaxOffset) {
+                mParallaxOffset = mNewParallaxOffset;
+                parallaxChanged = true;
+            }
+            if ((mChanges & COVERED_FADE_COLOR) != 0 && mCoveredFadeColor != mNewCoveredFadeColor) {
+                mCoveredFadeColor = mNewCoveredFadeColor;
+                changed = true;
+            }
+            if ((mChanges & SHADOW_HEIGHT) != 0 && mShadowHeight != mNewShadowHeight) {
+                mShadowHeight = mNewShadowHeight;
+                changed = true;
+            }
+            mChanges = 0;
+
+            if (mFirstLayout) {
+                // Everything is picked up by the first layout
+                return;
+            }
+            if (parallaxChanged && mMainView != null) {
+                // Also resets the translation when the parallax is turned off
+                ViewCompat.setTranslationY(mMainView, getCurrentParallaxOffset());
+            }
+            if (geometryChanged) {
+                updateGeometry();
+                requestLayout();
+            } else if (changed || parallaxChanged) {
+                invalidate();
+            }
+        }
+    }
+
     private class DragHelperCallback extends ViewDragHelper.Callback {
 
         @Override
         public boolean tryCaptureView(View child, int pointerId) {
-            if (mIsUnableToDrag) {
+            if (mIsUnableToDrag || child != mSlideableView) {
                 return false;
             }
-
-            return child == mSlideableView;
+            // The drag may reveal the whole panel, measure it before the first frame
+            ensurePanelMeasured();
+            return true;
         }
 
         @Override
         public void onViewDragStateChanged(int state) {
             if (mDragHelper.getViewDragState() == ViewDragHelper.STATE_IDLE) {
-                mSlideOffset = computeSlideOffset(mSlideableView.getTop());
+                mPanelTop = mSlideableView.getTop();
+                mSlideOffset = computeSlideOffset(mPanelTop);
                 applyParallaxForCurrentSlideOffset();
+                publishPanelPosition();
 
                 if (mSlideOffset == 1) {
                     updateObscuredViewVisibility();
@@ -1359,16 +2877,25 @@ public class SlidingUpPanelLayout extends ViewGroup {
                 } else if (mSlideOffset < 0) {
                     setPanelStateInternal(PanelState.HIDDEN);
                     mSlideableView.setVisibility(View.INVISIBLE);
+                    mPanelDormant = true;
                 } else {
                     updateObscuredViewVisibility();
                     setPanelStateInternal(PanelState.ANCHORED);
                 }
+                if (mGestureTelemetry != null) {
+                    final int distance = mGestureTelemetry.getStartTop() - mPanelTop;
+                    mGestureTelemetry.onGestureEnd(mSlideState, mIsSlidingUp ? distance : -distance,
+                            SystemClock.uptimeMillis());
+                }
             }
         }
 
         @Override
         public void onViewCaptured(View capturedChild, int activePointerId) {
             setAllChildrenVisible();
+            if (mGestureTelemetry != null) {
+                mGestureTelemetry.onGestureStart(mSlideState, mPanelTop, SystemClock.uptimeMillis());
+            }
         }
 
         @Override
@@ -1379,32 +2906,20 @@ public class SlidingUpPanelLayout extends ViewGroup {
 
         @Override
         public void onViewReleased(View releasedChild, float xvel, float yvel) {
-            int target = 0;
-
             // direction is always positive if we are sliding in the expanded direction
             float direction = mIsSlidingUp ? -yvel : yvel;
-
-            if (direction > 0 && mSlideOffset <= mAnchorPoint) {
-                // swipe up -> expand and stop at anchor point
-                target = computePanelTopPosition(mAnchorPoint);
-            } else if (direction > 0 && mSlideOffset > mAnchorPoint) {
-                // swipe up past anchor -> expand
-                target = computePanelTopPosition(1.0f);
-            } else if (direction < 0 && mSlideOffset >= mAnchorPoint) {
-                // swipe down -> collapse and stop at anchor point
-                target = computePanelTopPosition(mAnchorPoint);
-            } else if (direction < 0 && mSlideOffset < mAnchorPoint) {
-                // swipe down past anchor -> collapse
-                target = computePanelTopPosition(0.0f);
-            } else if (mSlideOffset >= (1.f + mAnchorPoint) / 2) {
-                // zero velocity, and far enough from anchor point => expand to the top
-                target = computePanelTopPosition(1.0f);
-            } else if (mSlideOffset >= mAnchorPoint / 2) {
-                // zero velocity, and close enough to anchor point => go to anchor
-                target = computePanelTopPosition(mAnchorPoint);
-            } else {
-                // settle at the bottom
-                target = computePanelTopPosition(0.0f);
+            final int target = mGeometry.computeReleaseTop(mSlideOffset, direction);
+
+            if (mGestureTelemetry != null) {
+                final PanelState targetState;
+                if (target == mGeometry.getExpandedTop()) {
+                    targetState = PanelState.EXPANDED;
+                } else if (target == mGeometry.getAnchoredTop()) {
+                    targetState = PanelState.ANCHORED;
+                } else {
+                    targetState = PanelState.COLLAPSED;
+                }
+                mGestureTelemetry.onRelease(direction, targetState);
             }
 
             mDragHelper.settleCapturedViewAt(releasedChild.getLeft(), target);
@@ -1413,18 +2928,12 @@ public class SlidingUpPanelLayout extends ViewGroup {
 
         @Override
         public int getViewVerticalDragRange(View child) {
-            return mSlideRange;
+            return mGeometry.getSlideRange();
         }
 
         @Override
         public int clampViewPositionVertical(View child, int top, int dy) {
-            final int collapsedTop = computePanelTopPosition(0.f);
-            final int expandedTop = computePanelTopPosition(1.0f);
-            if (mIsSlidingUp) {
-                return Math.min(Math.max(top, expandedTop), collapsedTop);
-            } else {
-                return Math.min(Math.max(top, collapsedTop), expandedTop);
-            }
+            return mGeometry.clampTop(top);
         }
     }
 
@@ -0,0 +1,66 @@
+package com.sothree.slidinguppanel;
+
+/**
+ * Rolling histogram of the latency between a touch event moving the panel and the draw that
+ * shows the new position, over the last {@link #WINDOW} samples.
+ */
+class TouchLatencyTracker {
+    static final int WINDOW = 128;
+    private static final int MAX_LATENCY_MILLIS = 200;
+
+    private final DurationHistogram mHistogram = new DurationHistogram(MAX_LATENCY_MILLIS);
+    private final long[] mSamples = new long[WINDOW];
+    private int mNext;
+    private int mSize;
+
+    // Event time of the touch event applied since the last draw, 0 if none
+    private long mPendingEventTime;
+
+    void clear() {
+        mHistogram.clear();
+        mNext = 0;
+        mSize = 0;
+        mPendingEventTime = 0;
+    }
+
+    /**
+     * Remember that the panel was moved by a touch event with the given time.
+     *
+     * @param eventTime The time of the event, in the uptime base of MotionEvent
+     */
+    void onTouchApplied(long eventTime) {
+        if (mPendingEventTime == 0) {
+            // Measure from the oldest event applied in this frame
+            mPendingEventTime = eventTime;
+        }
+    }
+
+    /**
+     * Record the latency of the touch event applied since the last draw, if any.
+     *
+     * @param drawTime The time of the draw, in the uptime base of MotionEvent
+     */
+    void onDraw(long drawTime) {
+        if (mPendingEventTime == 0) {
+            return;
+        }
+        final long latencyNanos = (drawTime - mPendingEventTime) * 1000000;
+        mPendingEventTime = 0;
+        if (mSize == WINDOW) {
+            mHistogram.remove(mSamples[mNext]);
+        } else {
+            mSize++;
+        }
+        mSamples[mNext] = latencyNanos;
+        mNext = (mNext + 1) % WINDOW;
+        mHistogram.add(latencyNanos);
+    }
+
+    int getCount() {
+        return mHistogram.getCount();
+    }
+
+    int getPercentileMillis(float percent) {
+        return mHistogram.getPercentileMillis(percent);
+    }
+}
@@ -27,8 +27,13 @@ import android.view.VelocityTracker;
 import android.view.View;
 import android.view.ViewConfiguration;
 import android.view.ViewGroup;
+import android.view.animation.AnimationUtils;
 import android.view.animation.Interpolator;
 
+import com.sothree.slidinguppanel.core.DragPhysics;
+import com.sothree.slidinguppanel.core.TouchPredictor;
+import com.sothree.slidinguppanel.core.TouchSampleBuffer;
+
 import java.util.Arrays;
 
 /**
@@ -103,8 +108,11 @@ public class ViewDragHelper {
 
     private static final int EDGE_SIZE = 20; // dp
 
-    private static final int BASE_SETTLE_DURATION = 256; // ms
-    private static final int MAX_SETTLE_DURATION = 600; // ms
+    // How far in the past input is sampled when resampling is enabled, like the platform does
+    private static final int RESAMPLE_LATENCY = 5; // ms
+
+    // Default time between a touch sample and the display of the frame it produces
+    private static final int DEFAULT_PREDICTION_HORIZON = 16; // ms
 
     // Current drag state; idle, dragging or settling
     private int mDragState;
@@ -137,8 +145,30 @@ public class ViewDragHelper {
     private View mCapturedView;
     private boolean mReleaseInProgress;
 
+    // Every sample of the active pointer, including the historical ones batched in each event
+    private final TouchSampleBuffer mActiveSamples = new TouchSampleBuffer();
+    private boolean mInputResamplingEnabled;
+
+    // Touch prediction; mRealTop is where the captured view would be without prediction
+    private final TouchPredictor mTouchPredictor = new TouchPredictor();
+    private boolean mTouchPredictionEnabled;
+    private int mPredictionHorizon = DEFAULT_PREDICTION_HORIZON;
+    private int mRealTop;
+
+    // Drag position recorded by touch events and applied on the next frame, if coalescing
+    private boolean mFrameCoalescingEnabled;
+    private boolean mPendingDrag;
+    private int mPendingLeft;
+    private int mPendingTop;
+
+    // Counts of the drag moves and settle frames, if set
+    private PanelWorkCounters mWorkCounters;
+
     private final ViewGroup mParentView;
 
+    // Scrollable descendants of the parent, for canScroll checks on the parent, if set
+    private ScrollableDescendantCache mScrollableDescendants;
+
     /**
      * A Callback is used as a communication channel with the ViewDragHelper back to the
      * parent view using it. <code>on*</code>methods are invoked on siginficant events and several
@@ -337,6 +367,12 @@ public class ViewDragHelper {
         }
     };
 
+    private final Runnable mApplyPendingDragRunnable = new Runnable() {
+        public void run() {
+            applyPendingDrag();
+        }
+    };
+
     /**
      * Factory method to create a new ViewDragHelper.
      *
@@ -443,6 +479,100 @@ public class ViewDragHelper {
         return mMinVelocity;
     }
 
+    /**
+     * Enable resampling of the drag input. When enabled, the dragged view follows the pointer
+     * position interpolated from all the samples batched in each MotionEvent at a fixed small
+     * latency, instead of the raw position of the last sample. This evens out the motion when the
+     * digitizer rate is not a multiple of the display rate.
+     *
+     * @param enabled true to resample the drag input
+     */
+    public void setInputResamplingEnabled(boolean enabled) {
+        mInputResamplingEnabled = enabled;
+    }
+
+    /**
+     * @return true if the drag input is resampled
+     * @see #setInputResamplingEnabled(boolean)
+     */
+    public boolean isInputResamplingEnabled() {
+        return mInputResamplingEnabled;
+    }
+
+    /**
+     * Enable prediction of the vertical drag position. When enabled, the captured view is dragged
+     * to where the active pointer is expected to be when the frame is displayed, extrapolated from
+     * its recent samples. The view snaps back to the real pointer position when it is released, so
+     * release velocities and settling are not affected.
+     *
+     * @param enabled true to predict the drag position
+     */
+    public void setTouchPredictionEnabled(boolean enabled) {
+        mTouchPredictionEnabled = enabled;
+    }
+
+    /**
+     * @return true if the drag position is predicted
+     * @see #setTouchPredictionEnabled(boolean)
+     */
+    public boolean isTouchPredictionEnabled() {
+        return mTouchPredictionEnabled;
+    }
+
+    /**
+     * Set how far ahead the drag position is predicted, see
+     * {@link #setTouchPredictionEnabled(boolean)}. This should be about the latency between the
+     * start of a frame and its display, one frame by default. The age of the touch sample at the
+     * start of the frame is added to it.
+     *
+     * @param horizon the prediction time in milliseconds
+     */
+    public void setTouchPredictionHorizon(int horizon) {
+        mPredictionHorizon = horizon;
+    }
+
+    /**
+     * Enable coalescing of the drag updates to one per frame. When enabled, touch events only
+     * record the newest position of the captured view, which is applied (and reported through
+     * {@link Callback#onViewPositionChanged(View, int, int, int, int)}) once on the next
+     * animation frame. Pending positions are applied immediately when the view is released.
+     *
+     * @param enabled true to coalesce drag updates
+     */
+    public void setFrameCoalescingEnabled(boolean enabled) {
+        if (!enabled) {
+            applyPendingDrag();
+        }
+        mFrameCoalescingEnabled = enabled;
+    }
+
+    /**
+     * @return true if drag updates are coalesced to one per frame
+     * @see #setFrameCoalescingEnabled(boolean)
+     */
+    public boolean isFrameCoalescingEnabled() {
+        return mFrameCoalescingEnabled;
+    }
+
+    /**
+     * Set the counters incremented for every drag move and settle frame.
+     *
+     * @param counters The counters, or null
+     */
+    void setWorkCounters(PanelWorkCounters counters) {
+        mWorkCounters = counters;
+    }
+
+    /**
+     * Answer canScroll checks on the parent from the given cache of its scrollable descendants,
+     * owned and invalidated by the parent.
+     *
+     * @param cache The cache, or null to walk the hierarchy under the touch point
+     */
+    void setScrollableDescendants(ScrollableDescendantCache cache) {
+        mScrollableDescendants = cache;
+    }
+
     /**
      * Retrieve the current drag state of this helper. This will return one of
      * {@link #STATE_IDLE}, {@link #STATE_DRAGGING} or {@link #STATE_SETTLING}.
@@ -495,6 +625,8 @@ public class ViewDragHelper {
 
         mCapturedView = childView;
         mActivePointerId = activePointerId;
+        mActiveSamples.clear();
+        mRealTop = childView.getTop();
         mCallback.onViewCaptured(childView, activePointerId);
         setDragState(STATE_DRAGGING);
     }
@@ -526,8 +658,10 @@ public class ViewDragHelper {
      * {@link #processTouchEvent(android.view.MotionEvent)} receiving an ACTION_CANCEL event.
      */
     public void cancel() {
+        applyPendingDrag();
         mActivePointerId = INVALID_POINTER;
         clearMotionHistory();
+        mActiveSamples.clear();
 
         if (mVelocityTracker != null) {
             mVelocityTracker.recycle();
@@ -625,86 +759,10 @@ public class ViewDragHelper {
     }
 
     private int computeSettleDuration(View child, int dx, int dy, int xvel, int yvel) {
-        xvel = clampMag(xvel, (int) mMinVelocity, (int) mMaxVelocity);
-        yvel = clampMag(yvel, (int) mMinVelocity, (int) mMaxVelocity);
-        final int absDx = Math.abs(dx);
-        final int absDy = Math.abs(dy);
-        final int absXVel = Math.abs(xvel);
-        final int absYVel = Math.abs(yvel);
-        final int addedVel = absXVel + absYVel;
-        final int addedDistance = absDx + absDy;
-
-        final float xweight = xvel != 0 ? (float) absXVel / addedVel :
-                (float) absDx / addedDistance;
-        final float yweight = yvel != 0 ? (float) absYVel / addedVel :
-                (float) absDy / addedDistance;
-
-        int xduration = computeAxisDuration(dx, xvel, mCallback.getViewHorizontalDragRange(child));
-        int yduration = computeAxisDuration(dy, yvel, mCallback.getViewVerticalDragRange(child));
-
-        return (int) (xduration * xweight + yduration * yweight);
-    }
-
-    private int computeAxisDuration(int delta, int velocity, int motionRange) {
-        if (delta == 0) {
-            return 0;
-        }
-
-        final int width = mParentView.getWidth();
-        final int halfWidth = width / 2;
-        final float distanceRatio = Math.min(1f, (float) Math.abs(delta) / width);
-        final float distance = halfWidth + halfWidth *
-                distanceInfluenceForSnapDuration(distanceRatio);
-
-        int duration;
-        velocity = Math.abs(velocity);
-        if (velocity > 0) {
-            duration = 4 * Math.round(1000 * Math.abs(distance / velocity));
-        } else {
-            final float range = (float) Math.abs(delta) / motionRange;
-            duration = (int) ((range + 1) * BASE_SETTLE_DURATION);
-        }
-        return Math.min(duration, MAX_SETTLE_DURATION);
-    }
-
-    /**
-     * Clamp the magnitude of value for absMin and absMax.
-     * If the value is below the minimum, it will be clamped to zero.
-     * If the value is above the maximum, it will be clamped to the maximum.
-     *
-     * @param value Value to clamp
-     * @param absMin Absolute value of the minimum significant value to return
-     * @param absMax Absolute value of the maximum value to return
-     * @return The clamped value with the same sign as <code>value</code>
-     */
-    private int clampMag(int value, int absMin, int absMax) {
-        final int absValue = Math.abs(value);
-        if (absValue < absMin) return 0;
-        if (absValue > absMax) return value > 0 ? absMax : -absMax;
-        return value;
-    }
-
-    /**
-     * Clamp the magnitude of value for absMin and absMax.
-     * If the value is below the minimum, it will be clamped to zero.
-     * If the value is above the maximum, it will be clamped to the maximum.
-     *
-     * @param value Value to clamp
-     * @param absMin Absolute value of the minimum significant value to return
-     * @param absMax Absolute value of the maximum value to return
-     * @return The clamped value with the same sign as <code>value</code>
-     */
-    private float clampMag(float value, float absMin, float absMax) {
-        final float absValue = Math.abs(value);
-        if (absValue < absMin) return 0;
-        if (absValue > absMax) return value > 0 ? absMax : -absMax;
-        return value;
-    }
-
-    private float distanceInfluenceForSnapDuration(float f) {
-        f -= 0.5f; // center the values about 0.
-        f *= 0.3f * Math.PI / 2.0f;
-        return (float) Math.sin(f);
+        return DragPhysics.computeSettleDuration(dx, dy, xvel, yvel,
+                (int) mMinVelocity, (int) mMaxVelocity,
+                mCallback.getViewHorizontalDragRange(child), mCallback.getViewVerticalDragRange(child),
+                mParentView.getWidth());
     }
 
     /**
@@ -743,11 +801,23 @@ public class ViewDragHelper {
      * @return true if settle is still in progress
      */
     public boolean continueSettling(boolean deferCallbacks) {
+        final boolean traced = PanelTrace.begin(PanelTrace.CONTINUE_SETTLING);
+        try {
+            return continueSettlingInternal(deferCallbacks);
+        } finally {
+            PanelTrace.end(traced);
+        }
+    }
+
+    private boolean continueSettlingInternal(boolean deferCallbacks) {
         // Make sure, there is a captured view
         if (mCapturedView == null) {
             return false;
         }
         if (mDragState == STATE_SETTLING) {
+            if (mWorkCounters != null) {
+                mWorkCounters.settleFrames++;
+            }
             boolean keepGoing = mScroller.computeScrollOffset();
             final int x = mScroller.getCurrX();
             final int y = mScroller.getCurrY();
@@ -797,6 +867,9 @@ public class ViewDragHelper {
      * or {@link #flingCapturedView(int, int, int, int)}.
      */
     private void dispatchViewReleased(float xvel, float yvel) {
+        // The view must be at its final, real dragged position before settling
+        snapToRealPosition();
+        applyPendingDrag();
         mReleaseInProgress = true;
         mCallback.onViewReleased(mCapturedView, xvel, yvel);
         mReleaseInProgress = false;
@@ -950,6 +1023,10 @@ public class ViewDragHelper {
      * @return true if child views of v can be scrolled by delta of dx.
      */
     protected boolean canScroll(View v, boolean checkV, int dx, int dy, int x, int y) {
+        if (v == mParentView && mScrollableDescendants != null) {
+            // Only visit the cached scrollable candidates instead of the whole hierarchy
+            return mScrollableDescendants.canScroll(checkV, dx, dy, true, x, y);
+        }
         if (v instanceof ViewGroup) {
             final ViewGroup group = (ViewGroup) v;
             final int scrollX = v.getScrollX();
@@ -1157,14 +1234,45 @@ public class ViewDragHelper {
             case MotionEvent.ACTION_MOVE: {
                 if (mDragState == STATE_DRAGGING) {
                     final int index = MotionEventCompat.findPointerIndex(ev, mActivePointerId);
-                    final float x = MotionEventCompat.getX(ev, index);
-                    final float y = MotionEventCompat.getY(ev, index);
-                    final int idx = (int) (x - mLastMotionX[mActivePointerId]);
-                    final int idy = (int) (y - mLastMotionY[mActivePointerId]);
-
-                    dragTo(mCapturedView.getLeft() + idx, mCapturedView.getTop() + idy, idx, idy);
+                    addActiveSamples(ev, index);
+                    final float x;
+                    final float y;
+                    if (mInputResamplingEnabled) {
+                        final long sampleTime = ev.getEventTime() - RESAMPLE_LATENCY;
+                        x = mActiveSamples.getXAt(sampleTime);
+                        y = mActiveSamples.getYAt(sampleTime);
+                    } else {
+                        x = MotionEventCompat.getX(ev, index);
+                        y = MotionEventCompat.getY(ev, index);
+                    }
+                    final float lastX = mLastMotionX[mActivePointerId];
+                    final float lastY = mLastMotionY[mActivePointerId];
+                    final int idx = (int) (x - lastX);
+                    final int idy = (int) (y - lastY);
+
+                    // The position is applied once per event, whatever the number of samples
+                    if (mTouchPredictionEnabled) {
+                        final int realTop = idy != 0
+                                ? mCallback.clampViewPositionVertical(mCapturedView, mRealTop + idy, idy)
+                                : mRealTop;
+                        mRealTop = realTop;
+                        // Predict up to the display of the frame being produced: the frame time
+                        // is when input is consumed, the sample may be older than that
+                        final long frameTime = AnimationUtils.currentAnimationTimeMillis();
+                        final long horizon = frameTime - ev.getEventTime() + mPredictionHorizon;
+                        final int predictedTop = realTop + Math.round(mTouchPredictor.predictDeltaY(
+                                mActiveSamples, frameTime, horizon));
+                        dragTo(getDragLeft() + idx, predictedTop, idx, predictedTop - getDragTop());
+                    } else {
+                        dragTo(getDragLeft() + idx, getDragTop() + idy, idx, idy);
+                        mRealTop = getDragTop();
+                    }
 
                     saveLastMotion(ev);
+                    // Carry the sub-pixel remainder over to the next event, otherwise slow drags
+                    // on high rate digitizers (less than a pixel per event) never move the view
+                    mLastMotionX[mActivePointerId] = lastX + idx;
+                    mLastMotionY[mActivePointerId] = lastY + idy;
                 } else {
                     // Check to see if any pointer is now over a draggable view.
                     final int pointerCount = MotionEventCompat.getPointerCount(ev);
@@ -1242,6 +1350,19 @@ public class ViewDragHelper {
         }
     }
 
+    /**
+     * Record all the samples of the given pointer in the event, the historical ones first. The
+     * velocity tracker already consumes the historical samples through addMovement.
+     */
+    private void addActiveSamples(MotionEvent ev, int pointerIndex) {
+        final int historySize = ev.getHistorySize();
+        for (int h = 0; h < historySize; h++) {
+            mActiveSamples.add(ev.getHistoricalEventTime(h),
+                    ev.getHistoricalX(pointerIndex, h), ev.getHistoricalY(pointerIndex, h));
+        }
+        mActiveSamples.add(ev.getEventTime(), ev.getX(pointerIndex), ev.getY(pointerIndex));
+    }
+
     private void reportNewEdgeDrags(float dx, float dy, int pointerId) {
         int dragsStarted = 0;
         if (checkNewEdgeDrag(dx, dy, pointerId, EDGE_LEFT)) {
@@ -1406,16 +1527,31 @@ public class ViewDragHelper {
 
     private void releaseViewForPointerUp() {
         mVelocityTracker.computeCurrentVelocity(1000, mMaxVelocity);
-        final float xvel = clampMag(
+        final float xvel = DragPhysics.clampMag(
                 VelocityTrackerCompat.getXVelocity(mVelocityTracker, mActivePointerId),
                 mMinVelocity, mMaxVelocity);
-        final float yvel = clampMag(
+        final float yvel = DragPhysics.clampMag(
                 VelocityTrackerCompat.getYVelocity(mVelocityTracker, mActivePointerId),
                 mMinVelocity, mMaxVelocity);
         dispatchViewReleased(xvel, yvel);
     }
 
     private void dragTo(int left, int top, int dx, int dy) {
+        if (mFrameCoalescingEnabled) {
+            // Only record the newest position, it is applied on the next frame
+            final int clampedX = dx != 0 ? mCallback.clampViewPositionHorizontal(mCapturedView, left, dx) : getDragLeft();
+            final int clampedY = dy != 0 ? mCallback.clampViewPositionVertical(mCapturedView, top, dy) : getDragTop();
+            if (clampedX != getDragLeft() || clampedY != getDragTop()) {
+                mPendingLeft = clampedX;
+                mPendingTop = clampedY;
+                if (!mPendingDrag) {
+                    mPendingDrag = true;
+                    ViewCompat.postOnAnimation(mParentView, mApplyPendingDragRunnable);
+                }
+            }
+            return;
+        }
+
         int clampedX = left;
         int clampedY = top;
         final int oldLeft = mCapturedView.getLeft();
@@ -1430,6 +1566,9 @@ public class ViewDragHelper {
         }
 
         if (dx != 0 || dy != 0) {
+            if (mWorkCounters != null) {
+                mWorkCounters.dragMoves++;
+            }
             final int clampedDx = clampedX - oldLeft;
             final int clampedDy = clampedY - oldTop;
             mCallback.onViewPositionChanged(mCapturedView, clampedX, clampedY,
@@ -1437,6 +1576,61 @@ public class ViewDragHelper {
         }
     }
 
+    /**
+     * Undo the predicted part of the drag, moving the captured view to the real pointer position.
+     */
+    private void snapToRealPosition() {
+        if (!mTouchPredictionEnabled || mDragState != STATE_DRAGGING || mCapturedView == null) {
+            return;
+        }
+        final int dy = mRealTop - getDragTop();
+        if (dy != 0) {
+            dragTo(getDragLeft(), mRealTop, 0, dy);
+        }
+    }
+
+    /**
+     * @return the left of the captured view, including a drag not applied yet
+     */
+    private int getDragLeft() {
+        return mPendingDrag ? mPendingLeft : mCapturedView.getLeft();
+    }
+
+    /**
+     * @return the top of the captured view, including a drag not applied yet
+     */
+    private int getDragTop() {
+        return mPendingDrag ? mPendingTop : mCapturedView.getTop();
+    }
+
+    /**
+     * Move the captured view to the position recorded by the coalesced drag updates, if any.
+     */
+    private void applyPendingDrag() {
+        if (!mPendingDrag) {
+            return;
+        }
+        mPendingDrag = false;
+        mParentView.removeCallbacks(mApplyPendingDragRunnable);
+        if (mCapturedView == null) {
+            return;
+        }
+        final int dx = mPendingLeft - mCapturedView.getLeft();
+        final int dy = mPendingTop - mCapturedView.getTop();
+        if (dx != 0) {
+            mCapturedView.offsetLeftAndRight(dx);
+        }
+        if (dy != 0) {
+            mCapturedView.offsetTopAndBottom(dy);
+        }
+        if (dx != 0 || dy != 0) {
+            if (mWorkCounters != null) {
+                mWorkCounters.dragMoves++;
+            }
+            mCallback.onViewPositionChanged(mCapturedView, mPendingLeft, mPendingTop, dx, dy);
+        }
+    }
+
     /**
      * Determine if the currently captured view is under the given point in the
      * parent view's coordinate system. If there is no captured view this method